@@ -0,0 +1,80 @@
+package sushi.compile.distance;
+
+/**
+ * Caches, for pairs of classes, the distances between their
+ * package names and between their simple names, that are used
+ * to score objects of an unexpected class. The name distances
+ * of each pair of classes are computed once, on first request.
+ */
+public final class ClassSimilarityCache {
+	private static final ClassValue<ClassValue<ClassSimilarity>> CACHE = new ClassValue<ClassValue<ClassSimilarity>>() {
+		@Override
+		protected ClassValue<ClassSimilarity> computeValue(Class<?> target) {
+			return new ClassValue<ClassSimilarity>() {
+				@Override
+				protected ClassSimilarity computeValue(Class<?> candidate) {
+					return new ClassSimilarity(target, candidate);
+				}
+			};
+		}
+	};
+
+	private ClassSimilarityCache() {}
+
+	/**
+	 * Returns the name distances between two classes.
+	 *
+	 * @param target a {@link Class}.
+	 * @param candidate a {@link Class}.
+	 * @return the {@link ClassSimilarity} of {@code candidate}
+	 *         with respect to {@code target}.
+	 */
+	public static ClassSimilarity get(Class<?> target, Class<?> candidate) {
+		return CACHE.get(target).get(candidate);
+	}
+
+	public static final class ClassSimilarity {
+		private final int packageDistance;
+		private final int classNameEdgeDistance;
+		private final int classNameEditDistance;
+
+		private ClassSimilarity(Class<?> target, Class<?> candidate) {
+			final String nameTarget = target.getName();
+			final int splitPointTarget = nameTarget.lastIndexOf('.');
+			final String packageTarget = (splitPointTarget < 0 ? "" : nameTarget.substring(0, splitPointTarget));
+			final String classNameTarget = (splitPointTarget < 0 ? nameTarget : nameTarget.substring(splitPointTarget));
+
+			final String nameCandidate = candidate.getName();
+			final int splitPointCandidate = nameCandidate.lastIndexOf('.');
+			final String packageCandidate = (splitPointCandidate < 0 ? "" : nameCandidate.substring(0, splitPointCandidate));
+			final String classNameCandidate = (splitPointCandidate < 0 ? nameCandidate : nameCandidate.substring(splitPointCandidate));
+
+			this.packageDistance = EdgeDistance.calculateDistance(packageTarget, packageCandidate);
+			this.classNameEdgeDistance = EdgeDistance.calculateDistance(classNameTarget, classNameCandidate);
+			this.classNameEditDistance = StringDistanceFunctions.distanceEditLevenshtein(classNameTarget, classNameCandidate);
+		}
+
+		/**
+		 * @return the {@link EdgeDistance} between the package names.
+		 */
+		public int getPackageDistance() {
+			return this.packageDistance;
+		}
+
+		/**
+		 * @return the {@link EdgeDistance} between the class names
+		 *         without package.
+		 */
+		public int getClassNameEdgeDistance() {
+			return this.classNameEdgeDistance;
+		}
+
+		/**
+		 * @return the Levenshtein distance between the class names
+		 *         without package.
+		 */
+		public int getClassNameEditDistance() {
+			return this.classNameEditDistance;
+		}
+	}
+}
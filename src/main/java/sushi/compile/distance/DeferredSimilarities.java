@@ -0,0 +1,163 @@
+package sushi.compile.distance;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sushi.compile.reflection.InitializedFields;
+
+/**
+ * The similarities of the steps of a visit of the object graphs, where
+ * the comparisons of the leaves (see {@link LeafSimilarity}) are deferred
+ * to the end of the visit, to split them among fork-join tasks. As the
+ * leaves are never aliased the visit does not depend on their similarity,
+ * and as the similarities of the steps are summed in the order of the
+ * visit the result is the same as the one of a sequential visit.
+ */
+final class DeferredSimilarities {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double[] steps = new double[INITIAL_CAPACITY];
+	private int stepCount = 0;
+
+	private Object[] leafTargets = new Object[INITIAL_CAPACITY];
+	private Object[] leafCandidates = new Object[INITIAL_CAPACITY];
+	private int[] leafSteps = new int[INITIAL_CAPACITY];
+	private long[] leafCosts = new long[INITIAL_CAPACITY + 1]; //leafCosts[i] is the cost of the leaves before i
+	private int leafCount = 0;
+
+	private volatile boolean converged = true;
+
+	/**
+	 * Adds a step of the visit.
+	 *
+	 * @param similarity the similarity of the step.
+	 */
+	void step(double similarity) {
+		if (this.stepCount == this.steps.length) {
+			this.steps = Arrays.copyOf(this.steps, this.stepCount << 1);
+		}
+		this.steps[this.stepCount++] = similarity;
+	}
+
+	/**
+	 * Adds a step of the visit that compares two leaves.
+	 *
+	 * @param objTarget a leaf of the target.
+	 * @param objCandidate a non-{@code null} node of the candidate.
+	 */
+	void stepLeaf(Object objTarget, Object objCandidate) {
+		if (this.leafCount == this.leafTargets.length) {
+			final int capacity = this.leafCount << 1;
+			this.leafTargets = Arrays.copyOf(this.leafTargets, capacity);
+			this.leafCandidates = Arrays.copyOf(this.leafCandidates, capacity);
+			this.leafSteps = Arrays.copyOf(this.leafSteps, capacity);
+			this.leafCosts = Arrays.copyOf(this.leafCosts, capacity + 1);
+		}
+		final int leaf = this.leafCount++;
+		this.leafTargets[leaf] = objTarget;
+		this.leafCandidates[leaf] = objCandidate;
+		this.leafSteps[leaf] = this.stepCount;
+		this.leafCosts[leaf + 1] = this.leafCosts[leaf] + cost(objTarget, objCandidate);
+		step(0.0d); //filled by sum
+	}
+
+	/**
+	 * Compares the leaves and sums the similarities of the steps, then
+	 * forgets the steps.
+	 *
+	 * @param initializedObjectFields the fields of the target to be
+	 *        considered, or {@code null} for all.
+	 * @param threshold a positive {@code long}, the estimated cost of
+	 *        the comparisons above which they are split among tasks.
+	 * @return the sum of the similarities of the steps.
+	 */
+	double sum(InitializedFields initializedObjectFields, long threshold) {
+		if (this.leafCount > 0) {
+			final LeafTask task = new LeafTask(initializedObjectFields, threshold, 0, this.leafCount);
+			if (this.leafCosts[this.leafCount] > threshold) {
+				ForkJoinPool.commonPool().invoke(task);
+			}
+			else {
+				task.compute();
+			}
+		}
+		double similarity = 0.0d;
+		for (int i = 0; i < this.stepCount; ++i) {
+			similarity += this.steps[i];
+		}
+		clearSteps();
+		return similarity;
+	}
+
+	/**
+	 * @return {@code false} iff some of the leaves compared since
+	 *         the last {@link #clear() clear} differ.
+	 */
+	boolean isConverged() {
+		return this.converged;
+	}
+
+	/**
+	 * Forgets the steps and the leaves, keeping the storage.
+	 */
+	void clear() {
+		clearSteps();
+		this.converged = true;
+	}
+
+	private void clearSteps() {
+		Arrays.fill(this.leafTargets, 0, this.leafCount, null);
+		Arrays.fill(this.leafCandidates, 0, this.leafCount, null);
+		this.leafCount = 0;
+		this.stepCount = 0;
+	}
+
+	/* An estimate of the cost of comparing two leaves */
+	private static long cost(Object objTarget, Object objCandidate) {
+		if (objTarget instanceof String && objCandidate instanceof String) {
+			return 1L + (long) ((String) objTarget).length() * ((String) objCandidate).length();
+		}
+		else if (objTarget.getClass().isArray() && objCandidate.getClass().isArray()) {
+			return 1L + Math.min(Array.getLength(objTarget), Array.getLength(objCandidate));
+		}
+		return 1L;
+	}
+
+	private final class LeafTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final InitializedFields initializedObjectFields;
+		private final long threshold;
+		private final int from;
+		private final int to;
+
+		LeafTask(InitializedFields initializedObjectFields, long threshold, int from, int to) {
+			this.initializedObjectFields = initializedObjectFields;
+			this.threshold = threshold;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			final long[] costs = DeferredSimilarities.this.leafCosts;
+			if (this.to - this.from > 1 && costs[this.to] - costs[this.from] > this.threshold) {
+				final int middle = (this.from + this.to) >>> 1;
+				invokeAll(new LeafTask(this.initializedObjectFields, this.threshold, this.from, middle),
+						new LeafTask(this.initializedObjectFields, this.threshold, middle, this.to));
+				return;
+			}
+			final LeafSimilarity leafSimilarity = new LeafSimilarity();
+			leafSimilarity.init(this.initializedObjectFields);
+			for (int leaf = this.from; leaf < this.to; ++leaf) {
+				DeferredSimilarities.this.steps[DeferredSimilarities.this.leafSteps[leaf]] =
+						leafSimilarity.similarityWithLeaf(DeferredSimilarities.this.leafTargets[leaf], DeferredSimilarities.this.leafCandidates[leaf]);
+			}
+			if (!leafSimilarity.isConverged()) {
+				DeferredSimilarities.this.converged = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package sushi.compile.distance;
+
+import sushi.compile.distance.RandomObjectGraphs.Node;
+import sushi.compile.reflection.InitializedFields;
+import sushi.logging.Logger;
+
+/**
+ * Compares head to head {@link DistanceSBES} and {@link DistanceBySimilarityOfObjectGraphs}
+ * on the same random pairs of target and candidate object graphs (see
+ * {@link RandomObjectGraphs}), with all the fields of the targets
+ * initialized. Each round computes the distances of all the pairs with
+ * both, after a warmup round, and the mean time per pair is logged.
+ */
+public final class DistanceBenchmark {
+	private static final Logger logger = new Logger(DistanceBenchmark.class);
+
+	/**
+	 * Entry point to run this as a Java application.
+	 *
+	 * @param args
+	 *            [pairs [nodes [rounds [seed]]]], by default 200 pairs of
+	 *            graphs with 50 nodes, 5 rounds and seed 0
+	 */
+	public static void main(final String[] args) {
+		final int pairs = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+		final int nodes = (args.length > 1 ? Integer.parseInt(args[1]) : 50);
+		final int rounds = (args.length > 2 ? Integer.parseInt(args[2]) : 5);
+		final long seed = (args.length > 3 ? Long.parseLong(args[3]) : 0L);
+
+		final RandomObjectGraphs graphs = new RandomObjectGraphs(seed);
+		final Node[] targets = new Node[pairs];
+		final Node[] candidates = new Node[pairs];
+		final InitializedFields[] fields = new InitializedFields[pairs];
+		for (int i = 0; i < pairs; ++i) {
+			targets[i] = graphs.graph(nodes);
+			//a tenth of the candidates are equal to their targets
+			candidates[i] = graphs.candidate(targets[i], (i % 10 == 0 ? 0.0d : 0.05d));
+			fields[i] = RandomObjectGraphs.allFields(targets[i]);
+		}
+		logger.info("Comparing the distances on " + pairs + " pairs of graphs with " + nodes + " nodes, seed " + seed);
+
+		for (int round = 0; round <= rounds; ++round) {
+			long sbesNanos = 0L;
+			long graphsNanos = 0L;
+			int sbesZeros = 0;
+			int graphsZeros = 0;
+			for (int i = 0; i < pairs; ++i) {
+				final long start = System.nanoTime();
+				final double sbes = DistanceSBES.distance(fields[i], targets[i], candidates[i]);
+				final long middle = System.nanoTime();
+				final double similarity = DistanceBySimilarityOfObjectGraphs.distance(fields[i], 0.0d, targets[i], candidates[i]);
+				final long end = System.nanoTime();
+				sbesNanos += middle - start;
+				graphsNanos += end - middle;
+				sbesZeros += (sbes == 0.0d ? 1 : 0);
+				graphsZeros += (similarity == 0.0d ? 1 : 0);
+			}
+			if (round == 0) {
+				continue; //warmup
+			}
+			logger.info("Round " + round + ": " +
+					DistanceSBES.class.getSimpleName() + " " + String.format("%.1f", sbesNanos / 1000.0d / pairs) + " us/pair (" + sbesZeros + " at distance 0), " +
+					DistanceBySimilarityOfObjectGraphs.class.getSimpleName() + " " + String.format("%.1f", graphsNanos / 1000.0d / pairs) + " us/pair (" + graphsZeros + " at distance 0)");
+		}
+	}
+
+	private DistanceBenchmark() { }
+}
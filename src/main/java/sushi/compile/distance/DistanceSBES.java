@@ -3,13 +3,10 @@ package sushi.compile.distance;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
-import sushi.compile.reflection.ObjectField;
+import sushi.compile.reflection.InitializedFields;
 import sushi.logging.Logger;
 import sushi.util.ReflectionUtils;
 import sushi.util.StringUtils;
@@ -19,20 +16,34 @@ public class DistanceSBES {
 
 	private static final Logger logger = new Logger(DistanceSBES.class);
 
-	private static final List<DistancePair> worklist = new LinkedList<DistancePair>();
-	private static final Map<Object, Integer> visited = new IdentityHashMap<Object, Integer>();
+	/* Whether the objects of a class are made by lazy initialization, 
+	 * i.e., whether the class is anonymous */
+	private static final ClassValue<Boolean> LAZY_INIT_CLASSES = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> clazz) {
+			final String name = clazz.getName();
+			return (name.contains("$") && StringUtils.isNumeric(name.subSequence(name.indexOf('$') + 1, name.length())));
+		}
+	};
+
+	/* Each thread computes distances with its own instance */
+	private static final ThreadLocal<DistanceSBES> instance = ThreadLocal.withInitial(DistanceSBES::new);
+
+	private final ObjectPairQueue worklist = new ObjectPairQueue();
+	private final Map<Object, Integer> visited = new IdentityHashMap<Object, Integer>();
 
 	private DistanceSBES() {}
 	
-	public static double distance(HashSet<ObjectField> nullObjectFields, Object... objects) {
+	public static double distance(InitializedFields nullObjectFields, Object... objects) {
+		final DistanceSBES engine = instance.get();
 		double retVal = 0;
 		for (int i = 0; i < objects.length - (objects.length % 2); i += 2) {
-			retVal += distance2(nullObjectFields, objects[i], objects[i + 1]);
+			retVal += engine.distance2(nullObjectFields, objects[i], objects[i + 1]);
 		}
 		return retVal;
 	}
 	
-	private static double distance2(HashSet<ObjectField> nullObjectFields, Object oPartial, Object oComplete) {
+	private double distance2(InitializedFields nullObjectFields, Object oPartial, Object oComplete) {
 		logger.debug("distance between: " + oPartial + " and " + oComplete);
 		if (oPartial == null && oComplete == null) {
 			logger.debug("both null");
@@ -46,32 +57,32 @@ public class DistanceSBES {
 		Class<?> cPartial = oPartial.getClass();
 		Class<?> cComplete = oComplete.getClass();
 
-		if (!cPartial.getClass().equals(cComplete.getClass())) {
-			// Do we want to penalize it? A penalty could affect the ability of
-			// the technique to synthesize equivalent sequences..or not?
-			return ReflectionUtils.classDistance(cPartial.getClass(), cComplete.getClass()) * DIFFERENT_CLASSES_WEIGHT;
-		}
+		// objects of different classes are penalized by the visit, as the 
+		// ones met deeper in the graphs
 		if (cPartial.isArray() ^ cComplete.isArray()) {
 			logger.debug("one of the two is an array");
 			return Distance.ARRAY_CELL_FACTOR * 10;
 		}
 		
-		worklist.clear();
-		visited.clear();
-		
-		return calculate(oPartial, oComplete, nullObjectFields);
+		try {
+			return calculate(oPartial, oComplete, nullObjectFields);
+		} finally {
+			//the instance is kept for reuse: do not retain the visited objects
+			this.worklist.clear();
+			this.visited.clear();
+		}
 	}
 	
-	private static double calculate(Object oPartial, Object oComplete, HashSet<ObjectField> nullObjectFields) {
+	private double calculate(Object oPartial, Object oComplete, InitializedFields nullObjectFields) {
 		double distance = 0.0d;
 		double lazyInitDistance = 0.0d;
 		
-		worklist.add(new DistancePair(oPartial, oComplete));
+		this.worklist.add(oPartial, oComplete);
 
-		while (!worklist.isEmpty()) {
-			DistancePair pair = worklist.remove(0);
-			Object objPartial = pair.o1;
-			Object objComplete = pair.o2;
+		while (!this.worklist.isEmpty()) {
+			final Object objPartial = this.worklist.headFirst();
+			final Object objComplete = this.worklist.headSecond();
+			this.worklist.removeHead();
 			
 			//========================================CORNER CASES========================================
 			//------------------NULL-------------------
@@ -81,15 +92,8 @@ public class DistanceSBES {
 			}
 			else if (objPartial == null ^ objComplete == null) {
 				logger.debug("One of the two objects is null");				
-				String name = "";
-				if (objPartial != null) {
-					name = objPartial.getClass().getName(); 
-				}
-				else {
-					name = objComplete.getClass().getName();
-				}
-				
-				if (name.contains("$") && StringUtils.isNumeric(name.subSequence(name.indexOf('$') + 1, name.length()))) {
+				final Class<?> clazz = (objPartial != null ? objPartial : objComplete).getClass();
+				if (LAZY_INIT_CLASSES.get(clazz)) {
 					logger.debug("One object is an anonymous class, lazy init?");
 					lazyInitDistance += ObjectDistance.getNullDistance(oPartial, oComplete);
 					continue; // lazy-init trick
@@ -135,33 +139,24 @@ public class DistanceSBES {
 			}
 			
 			//----------CIRCULAR DEPENDENCIES----------
-			else if (visited.put(objPartial, 1) != null && visited.put(objComplete, 2) != null) {
+			else if (this.visited.put(objPartial, 1) != null && this.visited.put(objComplete, 2) != null) {
 				continue;
 			}
 			
 			//------------------OBJECT-----------------
-			List<Field> fsPartial = ReflectionUtils.getInheritedPrivateFields(objPartial.getClass());
-			List<Field> fsComplete = ReflectionUtils.getInheritedPrivateFields(objComplete.getClass());
-			for (int i = 0; i < fsPartial.size(); i++) {
+			// the objects have the same class, thus the same fields; 
+			// constants and fields excluded by filter are already out of the plan
+			final FieldPlan plan = FieldPlan.of(objPartial.getClass());
+			final Field[] fs = plan.fields;
+			for (int i = 0; i < fs.length; i++) {
 				try {
-					Field fPartial = fsPartial.get(i);
-					Field fComplete = fsComplete.get(i);
-					
-					fPartial.setAccessible(true);
-					fComplete.setAccessible(true);
+					final Field fPartial = fs[i];
+					final Field fComplete = fs[i];
 					
-					// skip comparison of constants
-					if (ReflectionUtils.isConstant(fPartial) && ReflectionUtils.isConstant(fComplete)) {
-						logger.debug("Skip: " + Modifier.toString(fPartial.getModifiers()) + " " + fPartial.getType() + " " + fPartial.getName());
-						continue;
+					if (logger.isDebugEnabled()) {
+						logger.debug("Comparing " + Modifier.toString(fPartial.getModifiers())  + " " + fPartial.getDeclaringClass().getCanonicalName() + "." + fPartial.getName() + " vs " +  
+								Modifier.toString(fPartial.getModifiers())  + " " + fComplete.getDeclaringClass().getCanonicalName() + "." + fComplete.getName());
 					}
-					else if (FieldFilter.exclude(fPartial) || FieldFilter.exclude(fComplete)) {
-						logger.debug("Exclude: " + Modifier.toString(fPartial.getModifiers()) + " " + fPartial.getType() + " " + fPartial.getName());
-						continue;
-					}
-					
-					logger.debug("Comparing " + Modifier.toString(fPartial.getModifiers())  + " " + fPartial.getDeclaringClass().getCanonicalName() + "." + fPartial.getName() + " vs " +  
-							Modifier.toString(fPartial.getModifiers())  + " " + fComplete.getDeclaringClass().getCanonicalName() + "." + fComplete.getName());
 					
 					ComparisonType type = getComparisonType(fPartial.getType(), fComplete.getType());
 					switch (type) {
@@ -170,7 +165,7 @@ public class DistanceSBES {
 						// primitive values (e.g int, char, ..) primitive 
 						// classes (e.g. Integer) are treated as object and 
 						// handled in the subsequent iteration as corner case
-						distance += PrimitiveDistance.distance(fPartial, objPartial, fComplete, objComplete);
+						distance += PrimitiveDistance.distance(plan.readers[i], fPartial, objPartial, objComplete);
 						break;
 					case STRING:
 						distance += StringDistanceFunctions.distanceEditLevenshtein((String) fPartial.get(objPartial), (String) fComplete.get(objComplete));
@@ -181,17 +176,18 @@ public class DistanceSBES {
 					case OBJECT:
 						// null values and corner cases are managed at the 
 						// beginning of the iteration
-						logger.debug("Adding to worklist: " + Modifier.toString(fPartial.getModifiers()) + " " + fPartial.getType() + " " + fPartial.getName());
+						if (logger.isDebugEnabled()) {
+							logger.debug("Adding to worklist: " + Modifier.toString(fPartial.getModifiers()) + " " + fPartial.getType() + " " + fPartial.getName());
+						}
 						Object obj1value = fPartial.get(objPartial);
 						Object obj2value = fComplete.get(objComplete);
 						
-						ObjectField of = new ObjectField(objPartial, fPartial);
-						if (obj1value == null && !nullObjectFields.contains(of)) {
+						if (obj1value == null && !nullObjectFields.contains(objPartial, fPartial)) {
 							logger.debug("Skip because we don't care");
 							continue;
 						}
 						
-						worklist.add(new DistancePair(obj1value, obj2value));
+						this.worklist.add(obj1value, obj2value);
 						break;
 					default:
 						logger.error("Unknown comparison type: " + type);
@@ -212,7 +208,7 @@ public class DistanceSBES {
 		}
 	}
 	
-	private static double handleArray(Object objPartial, Object objComplete) {
+	private double handleArray(Object objPartial, Object objComplete) {
 		double distance = 0.0d;
 		
 		ComparisonType arrayType = getComparisonType(objPartial.getClass().getComponentType(), objPartial.getClass().getComponentType());
@@ -223,7 +219,7 @@ public class DistanceSBES {
 				Object[] fCompleteCast = Object[].class.cast(objComplete);
 				int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 				for (int i = 0; i < length; i++) {
-					worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+					this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 				}
 				distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 			}
@@ -263,7 +259,7 @@ public class DistanceSBES {
 		return distance;
 	}
 
-	private static double handleArray(Field fPartial, Object objPartial, Field fComplete, Object objComplete) {
+	private double handleArray(Field fPartial, Object objPartial, Field fComplete, Object objComplete) {
 		double distance = 0.0d;
 		
 		ComparisonType arrayType = getComparisonType(fPartial.getType().getComponentType(), fComplete.getType().getComponentType());
@@ -274,7 +270,7 @@ public class DistanceSBES {
 				Object[] fCompleteCast = Object[].class.cast(fComplete.get(objComplete));
 				int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 				for (int i = 0; i < length; i++) {
-					worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+					this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 				}
 				// trick: if two arrays have different length, but that
 				// difference is not used (that is, it is null), then they are equivalent
@@ -310,7 +306,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -320,7 +316,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -330,7 +326,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -340,7 +336,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -350,7 +346,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -360,7 +356,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -370,7 +366,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}
@@ -380,7 +376,7 @@ public class DistanceSBES {
 					
 					int length = Math.min(Array.getLength(fPartialCast), Array.getLength(fCompleteCast));
 					for (int i = 0; i < length; i++) {
-						worklist.add(new DistancePair(fPartialCast[i], fCompleteCast[i]));
+						this.worklist.add(fPartialCast[i], fCompleteCast[i]);
 					}
 					distance += (Math.max(Array.getLength(fPartialCast), Array.getLength(fCompleteCast)) - length) * Distance.ARRAY_CELL_FACTOR;
 				}		
@@ -433,13 +429,3 @@ public class DistanceSBES {
 enum ComparisonType {
 	ARRAY, PRIMITIVE, STRING, OBJECT
 }
-
-class DistancePair {
-	Object o1;
-	Object o2;
-
-	public DistancePair(Object o1, Object o2) {
-		this.o1 = o1;
-		this.o2 = o2;
-	}
-}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package sushi.compile.distance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import sushi.compile.distance.RandomObjectGraphs.Node;
+import sushi.compile.reflection.InitializedFields;
+import sushi.logging.Logger;
+
+/**
+ * Checks that {@link DistanceSBES} and {@link DistanceBySimilarityOfObjectGraphs}
+ * can be invoked concurrently: the distances of random pairs of target
+ * and candidate object graphs (see {@link RandomObjectGraphs}) are computed
+ * sequentially, then again by many threads at once on the same graphs,
+ * each starting from a different pair, and the results must be exactly
+ * the same. The graphs are compared with and without the structural
+ * fingerprints. Exits with status 1 if some result differs.
+ */
+public final class DistanceStress {
+	private static final Logger logger = new Logger(DistanceStress.class);
+
+	/**
+	 * Entry point to run this as a Java application.
+	 *
+	 * @param args
+	 *            [threads [rounds [pairs [nodes [seed]]]]], by default 8
+	 *            threads, 10 rounds, 200 pairs of graphs with 50 nodes
+	 *            and seed 0
+	 */
+	public static void main(final String[] args) throws InterruptedException {
+		final int threads = (args.length > 0 ? Integer.parseInt(args[0]) : 8);
+		final int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		final int pairs = (args.length > 2 ? Integer.parseInt(args[2]) : 200);
+		final int nodes = (args.length > 3 ? Integer.parseInt(args[3]) : 50);
+		final long seed = (args.length > 4 ? Long.parseLong(args[4]) : 0L);
+
+		final RandomObjectGraphs graphs = new RandomObjectGraphs(seed);
+		final Node[] targets = new Node[pairs];
+		final Node[] candidates = new Node[pairs];
+		final InitializedFields[] fields = new InitializedFields[pairs];
+		for (int i = 0; i < pairs; ++i) {
+			targets[i] = graphs.graph(nodes);
+			//a tenth of the candidates are equal to their targets
+			candidates[i] = graphs.candidate(targets[i], (i % 10 == 0 ? 0.0d : 0.05d));
+			fields[i] = RandomObjectGraphs.allFields(targets[i]);
+		}
+		logger.info("Comparing " + threads + " threads with a sequential run on " + pairs + " pairs of graphs with " + nodes + " nodes, seed " + seed);
+
+		int mismatches = 0;
+		for (boolean useFingerprints : new boolean[] { false, true }) {
+			DistanceBySimilarityOfObjectGraphs.setStructuralFingerprints(useFingerprints);
+			final double[] expected = new double[2 * pairs];
+			for (int i = 0; i < pairs; ++i) {
+				expected[2 * i] = DistanceSBES.distance(fields[i], targets[i], candidates[i]);
+				expected[2 * i + 1] = DistanceBySimilarityOfObjectGraphs.distance(fields[i], 0.0d, targets[i], candidates[i]);
+			}
+			for (int round = 1; round <= rounds; ++round) {
+				final int roundMismatches = concurrentMismatches(threads, targets, candidates, fields, expected);
+				logger.info((useFingerprints ? "With" : "Without") + " fingerprints, round " + round + ": " + roundMismatches + " mismatches");
+				mismatches += roundMismatches;
+			}
+		}
+		DistanceBySimilarityOfObjectGraphs.setStructuralFingerprints(false);
+
+		if (mismatches > 0) {
+			logger.error("The concurrent runs differ from the sequential one in " + mismatches + " distances");
+			System.exit(1);
+		}
+		logger.info("The concurrent runs agree with the sequential one");
+	}
+
+	/* Computes all the distances by many threads started at once, and
+	 * counts the ones that differ from the expected ones or that fail */
+	private static int concurrentMismatches(int threads, Node[] targets, Node[] candidates, InitializedFields[] fields, double[] expected)
+	throws InterruptedException {
+		final int pairs = targets.length;
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; ++t) {
+				final int first = (int) ((long) t * pairs / threads);
+				futures.add(pool.submit(() -> {
+					start.await();
+					int mismatches = 0;
+					for (int k = 0; k < pairs; ++k) {
+						final int i = (first + k) % pairs;
+						final double sbes = DistanceSBES.distance(fields[i], targets[i], candidates[i]);
+						final double similarity = DistanceBySimilarityOfObjectGraphs.distance(fields[i], 0.0d, targets[i], candidates[i]);
+						if (Double.doubleToRawLongBits(sbes) != Double.doubleToRawLongBits(expected[2 * i])) {
+							++mismatches;
+						}
+						if (Double.doubleToRawLongBits(similarity) != Double.doubleToRawLongBits(expected[2 * i + 1])) {
+							++mismatches;
+						}
+					}
+					return mismatches;
+				}));
+			}
+			start.countDown();
+			int mismatches = 0;
+			for (Future<Integer> future : futures) {
+				try {
+					mismatches += future.get();
+				} catch (ExecutionException e) {
+					logger.error("Error during the concurrent computation of the distances", e.getCause());
+					mismatches += 2 * pairs;
+				}
+			}
+			return mismatches;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private DistanceStress() { }
+}
@@ -0,0 +1,77 @@
+package sushi.compile.distance;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import sushi.compile.reflection.InitializedFields;
+import sushi.compile.reflection.PrimitiveFieldReader;
+import sushi.logging.Logger;
+import sushi.util.ReflectionUtils;
+
+/**
+ * The fields of a class that are compared when visiting its objects,
+ * i.e., the declared and inherited fields that are neither constants
+ * nor excluded by {@link FieldFilter}, already made accessible. The
+ * plan of each class is computed once, on its first use.
+ */
+final class FieldPlan {
+	private static final Logger logger = new Logger(FieldPlan.class);
+
+	private static final ClassValue<FieldPlan> plans = new ClassValue<FieldPlan>() {
+		@Override
+		protected FieldPlan computeValue(Class<?> clazz) {
+			return new FieldPlan(clazz);
+		}
+	};
+
+	/** The fields to compare. */
+	final Field[] fields;
+
+	/** For each field, its {@link InitializedFields#indexOf(Field) index}. */
+	final int[] indices;
+
+	/** For each field, its {@link PrimitiveFieldReader} if it is of primitive type, otherwise {@code null}. */
+	final PrimitiveFieldReader[] readers;
+
+	/** For each field, its description for logging. */
+	final String[] descriptions;
+
+	static FieldPlan of(Class<?> clazz) {
+		return plans.get(clazz);
+	}
+
+	private FieldPlan(Class<?> clazz) {
+		final List<Field> fields = new ArrayList<>();
+		final List<String> descriptions = new ArrayList<>();
+		for (Field aField : ReflectionUtils.getInheritedPrivateFields(clazz)) {
+			final String description = Modifier.toString(aField.getModifiers()) + " " + aField.getType() + " " + aField.getName();
+			if (ReflectionUtils.isConstant(aField)) {
+				logger.debug(" Skip: " + description);
+			}
+			else if (FieldFilter.exclude(aField)) {
+				logger.debug(" Exclude: " + description);
+			}
+			else {
+				try {
+					aField.setAccessible(true);
+					fields.add(aField);
+					descriptions.add(description);
+				} catch (RuntimeException e) {
+					logger.error("Field " + description + " of " + clazz.getName() + " cannot be made accessible, it will not be compared", e);
+				}
+			}
+		}
+		this.fields = fields.toArray(new Field[0]);
+		this.descriptions = descriptions.toArray(new String[0]);
+		this.indices = new int[this.fields.length];
+		this.readers = new PrimitiveFieldReader[this.fields.length];
+		for (int i = 0; i < this.fields.length; ++i) {
+			this.indices[i] = InitializedFields.indexOf(this.fields[i]);
+			if (this.fields[i].getType().isPrimitive()) {
+				this.readers[i] = PrimitiveFieldReader.of(this.fields[i]);
+			}
+		}
+	}
+}
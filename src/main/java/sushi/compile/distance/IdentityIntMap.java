@@ -0,0 +1,103 @@
+package sushi.compile.distance;
+
+import java.util.Arrays;
+
+/**
+ * A map from objects, compared by identity, to {@code int}s, with
+ * open addressing over two parallel arrays, so that lookups allocate
+ * nothing and values are not boxed. The map keeps its capacity
+ * across uses.
+ */
+final class IdentityIntMap {
+	/** The value of the objects that are not in the map. */
+	static final int ABSENT = -1;
+
+	private static final int INITIAL_CAPACITY = 64; //must be a power of 2
+
+	private Object[] keys = new Object[INITIAL_CAPACITY];
+	private int[] values = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * @param key an {@link Object}, possibly {@code null}.
+	 * @return the value associated to {@code key}, or {@link #ABSENT}.
+	 */
+	int get(Object key) {
+		if (key == null) {
+			return ABSENT;
+		}
+		final int mask = this.keys.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			final Object k = this.keys[i];
+			if (k == key) {
+				return this.values[i];
+			}
+			if (k == null) {
+				return ABSENT;
+			}
+		}
+	}
+
+	boolean containsKey(Object key) {
+		return get(key) != ABSENT;
+	}
+
+	/**
+	 * @param key a non-{@code null} {@link Object}.
+	 * @param value a nonnegative {@code int}.
+	 */
+	void put(Object key, int value) {
+		assert (key != null && value != ABSENT);
+		final int mask = this.keys.length - 1;
+		int i = hash(key) & mask;
+		for (Object k = this.keys[i]; k != null; k = this.keys[i]) {
+			if (k == key) {
+				this.values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		this.keys[i] = key;
+		this.values[i] = value;
+		//keeps the load factor at most 1/2
+		if (++this.size > (this.keys.length >> 1)) {
+			grow();
+		}
+	}
+
+	/**
+	 * Empties the map, keeping its capacity but
+	 * not the references to the keys.
+	 */
+	void clear() {
+		if (this.size > 0) {
+			Arrays.fill(this.keys, null);
+			this.size = 0;
+		}
+	}
+
+	private static int hash(Object key) {
+		final int h = System.identityHashCode(key);
+		//spreads the high bits, as identity hashes may be clustered
+		return h ^ (h >>> 16);
+	}
+
+	private void grow() {
+		final Object[] oldKeys = this.keys;
+		final int[] oldValues = this.values;
+		this.keys = new Object[oldKeys.length << 1];
+		this.values = new int[oldValues.length << 1];
+		final int mask = this.keys.length - 1;
+		for (int j = 0; j < oldKeys.length; ++j) {
+			final Object key = oldKeys[j];
+			if (key != null) {
+				int i = hash(key) & mask;
+				while (this.keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				this.keys[i] = key;
+				this.values[i] = oldValues[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package sushi.compile.distance;
+
+import static sushi.compile.path_condition_distance.InverseDistances.inverseDistanceExp;
+import static sushi.compile.path_condition_distance.InverseDistances.inverseDistanceRatio;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+import sushi.compile.reflection.InitializedFields;
+import sushi.compile.reflection.PrimitiveFieldReader;
+import sushi.logging.Logger;
+import sushi.util.ReflectionUtils;
+
+/**
+ * Computes the similarity of the leaves of the object graphs, i.e., 
+ * strings, boxed primitives and arrays of (boxed) primitives, that are never
+ * aliased and thus can be compared independently of the rest of the
+ * visit, possibly by other threads. Each thread must use its own 
+ * instance.
+ */
+final class LeafSimilarity {
+	private static final Logger logger = new Logger(LeafSimilarity.class);
+
+	/* The index of the field with the characters of a String, or -1 */
+	private static final int STRING_VALUE = stringValueIndex();
+
+	private boolean targetIsPartiallySymbolicObject = false;
+	private InitializedFields fieldsToBeConsidered = null;
+	private boolean converged = true;
+
+	void init(InitializedFields initializedObjectFields) {
+		this.targetIsPartiallySymbolicObject = (initializedObjectFields != null);
+		this.fieldsToBeConsidered = initializedObjectFields;
+		this.converged = true;
+	}
+
+	private static int stringValueIndex() {
+		try {
+			return InitializedFields.indexOf(String.class.getDeclaredField("value"));
+		} catch (NoSuchFieldException | SecurityException e) {
+			logger.error("Error while looking up the value field of String", e);
+			return -1;
+		}
+	}
+
+	/**
+	 * @return {@code false} iff some of the leaves compared since
+	 *         the last {@link #init(InitializedFields) init} differ.
+	 */
+	boolean isConverged() {
+		return this.converged;
+	}
+
+	/**
+	 * @param obj an {@link Object}.
+	 * @return {@code true} iff {@code obj} is a leaf, i.e., a string,
+	 *         a boxed primitive or an array of primitives or of boxed
+	 *         primitives.
+	 */
+	static boolean isLeaf(Object obj) {
+		return ReflectionUtils.isPrimitive(obj) || ReflectionUtils.isString(obj);
+	}
+
+	/**
+	 * @param objTarget a leaf of the target.
+	 * @param objCandidate a non-{@code null} node of the candidate.
+	 * @return the similarity of {@code objCandidate} with {@code objTarget}.
+	 */
+	double similarityWithLeaf(Object objTarget, Object objCandidate) {
+		if (ReflectionUtils.isArray(objTarget)) {
+			return similarityWithPrimitiveArray(objTarget, objCandidate);
+		}
+		else if (ReflectionUtils.isPrimitive(objTarget)) {
+			return similarityWithPrimitiveObject(objTarget, objCandidate);
+		}
+		return similarityWithString(objTarget, objCandidate);
+	}
+
+	/**
+	 * @param objTarget an array of primitives or of boxed primitives of the target.
+	 * @param objCandidate a non-{@code null} node of the candidate.
+	 * @return the similarity of {@code objCandidate} with {@code objTarget},
+	 *         between 0 and 1 as for the other leaves: the mean of the 
+	 *         similarity of the lengths and of the mean similarity of 
+	 *         the items, where the items missing in the shorter array 
+	 *         score 0 and, if the target is partially symbolic, the 
+	 *         items that are not initialized are not considered.
+	 */
+	double similarityWithPrimitiveArray(Object objTarget, Object objCandidate) {
+		logger.debug("Handling array of primitives");
+		if (!objTarget.getClass().equals(objCandidate.getClass())) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Arrays differently typed: " + objTarget.getClass() + " vs " + objCandidate.getClass());
+			}
+			this.converged = false;
+			return 0.0d;
+		}
+
+		final int lengthTarget = Array.getLength(objTarget);
+		final int lengthCandidate = Array.getLength(objCandidate);
+		final int lengthCommon = Math.min(lengthTarget, lengthCandidate);
+		final int lengthDistance = Math.max(lengthTarget, lengthCandidate) - lengthCommon;
+		final double lengthSimilarity;
+		if (lengthDistance == 0) lengthSimilarity = 1.0d;
+		else {
+			lengthSimilarity = inverseDistanceExp(lengthDistance, 1.0d);
+			this.converged = false;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Length similarity: " + lengthSimilarity);
+		}
+
+		//the array items are compared in place rather than through the 
+		//worklist, since they are never aliased
+		double itemsSimilarity = 0.0d;
+		int items = lengthDistance;
+		if (objTarget.getClass().getComponentType().isPrimitive()) {
+			//the typed kernels read the items with no boxing, possibly
+			//only the initialized ones
+			final int itemsCompared;
+			if (this.targetIsPartiallySymbolicObject) {
+				final long[] itemsConsidered = this.fieldsToBeConsidered.itemsOf(objTarget);
+				if (itemsConsidered == null) {
+					logger.debug("Don't care: all the array items");
+					itemsCompared = 0;
+				}
+				else {
+					itemsSimilarity = PrimitiveDistance.arraySimilarity(objTarget, objCandidate, lengthCommon, itemsConsidered);
+					itemsCompared = PrimitiveDistance.countItems(itemsConsidered, lengthCommon);
+				}
+			}
+			else {
+				itemsSimilarity = PrimitiveDistance.arraySimilarity(objTarget, objCandidate, lengthCommon);
+				itemsCompared = lengthCommon;
+			}
+			items += itemsCompared;
+			if (itemsSimilarity != itemsCompared) {
+				this.converged = false;
+			}
+		}
+		else {
+			for (int i = 0; i < lengthCommon; i++) { 
+				if (this.targetIsPartiallySymbolicObject && 
+						!this.fieldsToBeConsidered.contains(objTarget, i)) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Don't care: at array item [" + i +"]");
+					}
+				}
+				else {
+					itemsSimilarity += similarityWithItem(Array.get(objTarget, i), Array.get(objCandidate, i));
+					++items;
+				}
+			}
+		}
+		final double similarity = (lengthSimilarity + (items == 0 ? 1.0d : itemsSimilarity / items)) / 2.0d;
+		if (logger.isDebugEnabled()) {
+			logger.debug("With array items: Similarity increases by: " + similarity);
+		}
+		return similarity;
+	}
+
+	/* The similarity of two items of arrays of boxed primitives */
+	private double similarityWithItem(Object itemTarget, Object itemCandidate) {
+		if (itemTarget == null || itemCandidate == null) {
+			if (itemTarget == itemCandidate) return 1.0d;
+			this.converged = false;
+			return 0.0d;
+		}
+		return similarityWithPrimitiveObject(itemTarget, itemCandidate);
+	}
+
+	double similarityWithString(Object objTarget, Object objCandidate) {
+		logger.debug("Handling String");
+		double similarity = 0.0d;
+		if (this.targetIsPartiallySymbolicObject && STRING_VALUE < 0) {
+			logger.error("Error during Similarity calculation: no value field in String");
+			this.converged = false;
+		}
+		else if (this.targetIsPartiallySymbolicObject && !this.fieldsToBeConsidered.contains(objTarget, STRING_VALUE)) {
+			similarity += 1.0d;
+		} else {
+			double distance = StringDistanceFunctions.distanceEditLevenshtein((String) objTarget, (String) objCandidate);
+			if (distance == 0.0d) similarity += 1.0d;
+			else {
+				similarity += inverseDistanceExp(distance, 1.0d);
+				this.converged = false;
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Similarity increases by: " + similarity);
+		}
+		return similarity;
+	}
+
+	/**
+	 * @param reader the {@link PrimitiveFieldReader} of {@code field}.
+	 * @param field a {@link Field} of primitive type.
+	 * @param objTarget an object of the target with {@code field}.
+	 * @param objCandidate an object of the candidate with {@code field}.
+	 * @return the similarity of the value of {@code field} in {@code objCandidate}
+	 *         with the one in {@code objTarget}, as if they were boxed and 
+	 *         compared by {@link #similarityWithPrimitiveObject(Object, Object)}.
+	 */
+	double similarityWithPrimitiveField(PrimitiveFieldReader reader, Field field, Object objTarget, Object objCandidate) {
+		final double distance = PrimitiveDistance.distance(reader, field, objTarget, objCandidate);
+		final double similarity;
+		if (distance == 0.0d) similarity = 1.0d;
+		else {
+			similarity = inverseDistanceRatio(distance, 1.0d);
+			this.converged = false;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Primitive field " + field.getName() + ": Similarity increases by: " + similarity);
+		}
+		return similarity;
+	}
+
+	double similarityWithPrimitiveObject(Object objTarget, Object objCandidate) {
+		// this definition of primitive contains also
+		// primitive classes (e.g. Integer)
+		if (logger.isDebugEnabled()) {
+			logger.debug("Handling primitive objects: " + objTarget + " " +  objCandidate);
+		}
+		double similarity = 0.0d;
+		if (objCandidate == objTarget) return 1.0d;
+		double distance = PrimitiveDistance.distance(objTarget, objCandidate);
+		if (distance == 0.0d) similarity += 1.0d;
+		else {
+			similarity += inverseDistanceRatio(distance, 1.0d);
+			this.converged = false;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Similarity increases by: " + similarity);
+		}
+		return similarity;
+	}
+}
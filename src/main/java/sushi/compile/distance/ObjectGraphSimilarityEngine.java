@@ -0,0 +1,650 @@
+package sushi.compile.distance;
+
+import static sushi.compile.path_condition_distance.InverseDistances.inverseDistanceExp;
+import static sushi.compile.path_condition_distance.InverseDistances.inverseDistanceRatio;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+import sushi.compile.distance.ClassSimilarityCache.ClassSimilarity;
+import sushi.compile.reflection.InitializedFields;
+import sushi.compile.reflection.PrimitiveFieldReader;
+import sushi.logging.Logger;
+import sushi.util.ReflectionUtils;
+
+/**
+ * Computes the similarity between the object graphs of a target and 
+ * of a candidate. An engine holds the state of the visit and reuses it
+ * across computations, thus it must not be used by many threads at once; 
+ * different engines can be used concurrently.
+ */
+public final class ObjectGraphSimilarityEngine {
+
+	private static final Logger logger = new Logger(ObjectGraphSimilarityEngine.class);
+
+	private boolean targetIsPartiallySymbolicObject = false;
+	private InitializedFields fieldsToBeConsidered = null;
+	private boolean considerAliases = true;
+
+	/*The two maps below track the visited objects
+	 * and associate each visited object with an Id
+	 * that is equivalent between the paired object
+	 * of target and candidate, respectively; the Ids
+	 * are the nodes of the tree of the access paths*/
+	private final IdentityIntMap visitedInTarget = new IdentityIntMap(); 
+	private final IdentityIntMap visitedInCandidate = new IdentityIntMap();
+	private final PathTree paths = new PathTree();
+
+	private final ObjectPairQueue worklist = new ObjectPairQueue();
+	private final LeafSimilarity leafSimilarity = new LeafSimilarity();
+	private boolean converged;
+
+	/*The budget of a computation, in visited nodes and
+	 * in nanoseconds; 0 means unbounded*/
+	private int maxVisitedNodes = 0;
+	private long maxVisitNanos = 0L;
+	private int visitedNodes;
+	private long deadline;
+	private boolean budgetExhausted;
+
+	/*The fingerprints of the subgraphs, if they are used*/
+	private boolean useFingerprints = false;
+	private final SubgraphFingerprints fingerprints = new SubgraphFingerprints();
+	private final ObjectPairQueue subgraphWorklist = new ObjectPairQueue();
+
+	/*The comparisons of the leaves deferred to fork-join
+	 * tasks, if their cost exceeds the threshold; 0 means
+	 * that the leaves are compared during the visit*/
+	private long parallelThreshold = 0L;
+	private final DeferredSimilarities deferred = new DeferredSimilarities();
+
+	public ObjectGraphSimilarityEngine() {}
+
+	/**
+	 * Sets whether the leaves of the object graphs (strings, boxed 
+	 * primitives and arrays of primitives) are compared in parallel. 
+	 * If so their comparisons are deferred to the end of the visit of 
+	 * each pair of roots, and when their estimated cost exceeds the 
+	 * threshold they are split among tasks of the common fork-join 
+	 * pool. The alias Ids are assigned by the visit as usual, thus 
+	 * the result is the same as the one of a sequential computation.
+	 * 
+	 * @param parallelThreshold a nonnegative {@code long}, the estimated 
+	 *        cost of the comparisons of a task (about the number of 
+	 *        compared characters or array items), or 0 for no parallelism.
+	 */
+	public void setParallelThreshold(long parallelThreshold) {
+		if (parallelThreshold < 0) {
+			throw new IllegalArgumentException("The parallel threshold cannot be negative");
+		}
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Sets whether the pairs of subgraphs of target and candidate 
+	 * with the same structural fingerprint are scored at once, rather
+	 * than visited node by node. This pays when target and candidate
+	 * share large equal trees, at the cost of fingerprinting them.
+	 * 
+	 * @param useFingerprints a {@code boolean}; {@code false} by default.
+	 * @see SubgraphFingerprints
+	 */
+	public void setStructuralFingerprints(boolean useFingerprints) {
+		this.useFingerprints = useFingerprints;
+	}
+
+	/**
+	 * Bounds the visit of the object graphs. When the budget is 
+	 * exhausted the computation stops, and returns the similarity
+	 * of the nodes visited so far as if the graphs did not converge. 
+	 * The visit is breadth-first, thus the nodes nearest to the roots
+	 * are scored first.
+	 * 
+	 * @param maxVisitedNodes a nonnegative {@code int}, the maximum 
+	 *        number of pairs of nodes visited by a computation, 
+	 *        or 0 for no bound.
+	 * @param maxVisitNanos a nonnegative {@code long}, the maximum
+	 *        duration in nanoseconds of a computation, or 0 for 
+	 *        no bound.
+	 */
+	public void setVisitBudget(int maxVisitedNodes, long maxVisitNanos) {
+		if (maxVisitedNodes < 0 || maxVisitNanos < 0) {
+			throw new IllegalArgumentException("The visit budget cannot be negative");
+		}
+		this.maxVisitedNodes = maxVisitedNodes;
+		this.maxVisitNanos = maxVisitNanos;
+	}
+	
+	private void init(InitializedFields initializedObjectFields, boolean aliases) {
+		//setting parameters for the computation 
+		this.targetIsPartiallySymbolicObject = (initializedObjectFields != null);
+		this.fieldsToBeConsidered = initializedObjectFields;
+		this.considerAliases = aliases;		
+		
+		/*The two maps below track the visited objects
+		 * and associate each visited object with an Id
+		 * that is equivalent between the paired object
+		 * of target and candidate, respectively*/
+		this.visitedInTarget.clear();
+		this.visitedInCandidate.clear();
+		this.paths.clear();
+		
+		this.converged = true; //assume convergence until observing a convergence failure
+		this.leafSimilarity.init(initializedObjectFields);
+		this.deferred.clear();
+		
+		this.visitedNodes = 0;
+		this.deadline = (this.maxVisitNanos > 0 ? System.nanoTime() + this.maxVisitNanos : 0L);
+		this.budgetExhausted = false;
+	}
+	
+	private void prepareFingerprints(InitializedFields initializedObjectFields, boolean aliases, Object[] objects) {
+		if (this.useFingerprints) {
+			this.fingerprints.prepare(objects, initializedObjectFields, aliases);
+		}
+	}
+	
+	private boolean consumeBudget() {
+		if (this.budgetExhausted) {
+			return false;
+		}
+		++this.visitedNodes;
+		if (this.maxVisitedNodes > 0 && this.visitedNodes > this.maxVisitedNodes) {
+			this.budgetExhausted = true;
+		}
+		//reading the clock at every node would cost more than the visit
+		else if (this.maxVisitNanos > 0 && (this.visitedNodes & 0x3F) == 0 && System.nanoTime() - this.deadline > 0) {
+			this.budgetExhausted = true;
+		}
+		if (this.budgetExhausted) {
+			logger.debug("Visit budget exhausted after " + this.visitedNodes + " nodes");
+			this.converged = false; //the unvisited nodes might not converge
+			return false;
+		}
+		return true;
+	}
+	
+	private void release() {
+		//the engine may be kept for reuse: do not retain the visited objects
+		this.fieldsToBeConsidered = null;
+		this.visitedInTarget.clear();
+		this.visitedInCandidate.clear();
+		this.paths.clear();
+		this.worklist.clear();
+		this.fingerprints.clear();
+		this.subgraphWorklist.clear();
+		this.deferred.clear();
+	}
+
+
+	public double distance(InitializedFields initializedObjectFields, 
+			double knownRefSimilarity, Object... objects) {
+				
+		init(initializedObjectFields, true);
+		
+		logger.debug("Computing similarity: BEGIN ");
+		double achievedSimilarity = 0.0d;
+		try {
+			prepareFingerprints(initializedObjectFields, true, objects);
+			for (int i = 0; i < objects.length - (objects.length % 2); i += 2) {
+				Object oTarget = objects[i];
+				Object oCandidate = objects[i + 1];
+
+				logger.debug("Computing similarity value for " + oCandidate + " wrt " + oTarget);
+				achievedSimilarity += computeSimilarity(oTarget, oCandidate, i);
+				logger.debug("Actual similarity is " + achievedSimilarity);
+
+			}
+		} finally {
+			release();
+		}
+		
+		logger.debug("Computing similarity: END: Similarity is " + achievedSimilarity);
+
+		final boolean converged = this.converged && this.leafSimilarity.isConverged() && this.deferred.isConverged();
+		double distance = (converged) ? 0.0d : inverseDistanceRatio(achievedSimilarity, 100.00d);
+		logger.debug("Current distance is " + distance);
+		return distance;
+	}
+
+	/* kept only for debugging purposes */
+	public double refSimilarity(InitializedFields initializedObjectFields, 
+			boolean aliases, Object... objects) {
+		
+		init(initializedObjectFields, aliases);
+		
+		logger.debug("Computing ref similarity: BEGIN ");
+		double refSimilarity = 0.0d;
+		try {
+			prepareFingerprints(initializedObjectFields, aliases, objects);
+			for (int i = 0; i < objects.length - (objects.length % 2); i += 2) {
+				Object oTarget = objects[i];
+				
+				logger.debug("Computing ref similarity value for " + oTarget);
+				refSimilarity += computeSimilarity(oTarget, oTarget, i); 
+				logger.debug("Ref similarity of " + oTarget + " is " + refSimilarity);
+			}
+		} finally {
+			release();
+		}
+		
+		logger.debug("Computing ref similarity: END: Ref similarity is " + refSimilarity);
+		
+		return refSimilarity;
+	}
+	
+	private double computeSimilarity(Object oTarget, Object oCandidate, int rootIndex) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("computing similarity value for " + oCandidate + " wrt " + oTarget);
+		}
+		
+		double similarity = 0.0d;
+
+		if (oTarget == null || oCandidate == null) {
+			similarity += similarityWithNull(oTarget, oCandidate);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Similarity: " + similarity);
+			}
+			return similarity;
+		}
+
+		this.worklist.clear();
+
+		if (this.budgetExhausted) {
+			return similarity;
+		}
+		//when deferring the leaves, the similarities of the steps are summed at the end
+		final boolean deferLeaves = (this.parallelThreshold > 0);
+		final double rootSimilarity = handleEdgeToSubElement(oTarget, oCandidate, this.paths.root(rootIndex));
+		if (deferLeaves) {
+			this.deferred.step(rootSimilarity);
+		}
+		else {
+			similarity += rootSimilarity;
+		}
+		
+		while (!this.worklist.isEmpty() && consumeBudget()) {
+			final Object objTarget = this.worklist.headFirst();
+			final Object objCandidate = this.worklist.headSecond();
+			this.worklist.removeHead();
+			
+			assert(this.visitedInTarget.containsKey(objTarget));
+			assert(this.visitedInCandidate.containsKey(objCandidate));
+			assert(this.visitedInTarget.get(objTarget) == this.visitedInCandidate.get(objCandidate));
+			
+			final double stepSimilarity;
+			if (objTarget == null || objCandidate == null) {
+				stepSimilarity = similarityWithNull(objTarget, objCandidate);
+			}
+			else if (deferLeaves && LeafSimilarity.isLeaf(objTarget)) {
+				this.deferred.stepLeaf(objTarget, objCandidate);
+				continue;
+			}
+			else if (this.useFingerprints && this.fingerprints.sameSubgraph(objTarget, objCandidate) && 
+					unvisitedSubgraph(objCandidate)) {
+				logger.debug("Equal subgraphs");
+				stepSimilarity = this.fingerprints.selfSimilarity(objTarget);
+				registerSubgraphs(objTarget, objCandidate);
+			}
+			else if (ReflectionUtils.isArray(objTarget)) {
+				stepSimilarity = similarityWithArray(objTarget, objCandidate);
+			}
+			else if (ReflectionUtils.isPrimitive(objTarget)) {
+				stepSimilarity = this.leafSimilarity.similarityWithPrimitiveObject(objTarget, objCandidate);
+			}
+			else if (ReflectionUtils.isString(objTarget)) {
+				stepSimilarity = this.leafSimilarity.similarityWithString(objTarget, objCandidate);
+			}
+			else /* OBJECT */{
+				stepSimilarity = similarityWithObject(objTarget, objCandidate);
+			}
+			if (deferLeaves) {
+				this.deferred.step(stepSimilarity);
+			}
+			else {
+				similarity += stepSimilarity;
+				if (logger.isDebugEnabled()) {
+					logger.debug("Similarity after this step: " + similarity);
+				}
+			}
+		}
+		if (deferLeaves) {
+			similarity = this.deferred.sum(this.fieldsToBeConsidered, this.parallelThreshold);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Similarity: " + similarity);
+		}
+		return similarity;
+	}
+	
+	/* The nodes of an equal subgraph of the target are reached only 
+	 * from the subgraph, thus they are not visited yet, but the nodes
+	 * of the candidate subgraph may have been reached from elsewhere */
+	private boolean unvisitedSubgraph(Object rootCandidate) {
+		boolean unvisited = true;
+		this.subgraphWorklist.add(rootCandidate, null);
+		while (!this.subgraphWorklist.isEmpty()) {
+			final Object objCandidate = this.subgraphWorklist.headFirst();
+			this.subgraphWorklist.removeHead();
+			if (objCandidate != rootCandidate && this.visitedInCandidate.containsKey(objCandidate)) {
+				unvisited = false;
+				this.subgraphWorklist.clear();
+				break;
+			}
+			if (objCandidate.getClass().isArray()) {
+				for (Object item : (Object[]) objCandidate) {
+					if (!mustIgnoreAliases(item)) {
+						this.subgraphWorklist.add(item, null);
+					}
+				}
+			}
+			else {
+				final FieldPlan plan = FieldPlan.of(objCandidate.getClass());
+				for (int i = 0; i < plan.fields.length; ++i) {
+					if (plan.readers[i] != null) {
+						continue; //a primitive value is never visited
+					}
+					try {
+						final Object value = plan.fields[i].get(objCandidate);
+						if (!mustIgnoreAliases(value)) {
+							this.subgraphWorklist.add(value, null);
+						}
+					} catch (IllegalAccessException e) {
+						logger.error("Error during Similarity calculation", e);
+					}
+				}
+			}
+		}
+		return unvisited;
+	}
+
+	/* Marks as visited the nodes of two equal subgraphs, as the
+	 * visit of the subgraphs would do, so that the edges from 
+	 * the rest of the graphs to them are scored as usual */
+	private void registerSubgraphs(Object rootTarget, Object rootCandidate) {
+		this.subgraphWorklist.add(rootTarget, rootCandidate);
+		while (!this.subgraphWorklist.isEmpty()) {
+			final Object objTarget = this.subgraphWorklist.headFirst();
+			final Object objCandidate = this.subgraphWorklist.headSecond();
+			this.subgraphWorklist.removeHead();
+			final int id = this.visitedInTarget.get(objTarget);
+			if (objTarget.getClass().isArray()) {
+				final Object[] arrayTarget = (Object[]) objTarget;
+				final Object[] arrayCandidate = (Object[]) objCandidate;
+				for (int i = 0; i < arrayTarget.length; ++i) {
+					registerSubgraphNode(arrayTarget[i], arrayCandidate[i], this.paths.item(id, i));
+				}
+			}
+			else {
+				final FieldPlan plan = FieldPlan.of(objTarget.getClass());
+				for (int i = 0; i < plan.fields.length; ++i) {
+					if (plan.readers[i] != null) {
+						continue; //a primitive value is never visited
+					}
+					try {
+						final Field aField = plan.fields[i];
+						registerSubgraphNode(aField.get(objTarget), aField.get(objCandidate), this.paths.field(id, aField));
+					} catch (IllegalAccessException e) {
+						logger.error("Error during Similarity calculation", e);
+					}
+				}
+			}
+		}
+	}
+	
+	private void registerSubgraphNode(Object objTarget, Object objCandidate, int subElementId) {
+		if (!mustIgnoreAliases(objTarget)) {
+			this.visitedInTarget.put(objTarget, subElementId);
+			this.visitedInCandidate.put(objCandidate, subElementId);
+			this.subgraphWorklist.add(objTarget, objCandidate);
+		}
+	}
+
+	private double similarityWithObject(Object objTarget, Object objCandidate) {
+		logger.debug("Handling OBJECT");
+		double similarity = 0.0d;
+		
+		assert (objTarget != null && objCandidate != null); //handled in similarityWithNull
+		if (!objTarget.getClass().equals(objCandidate.getClass())) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("different classes: " + objTarget.getClass() + " vs " + objCandidate.getClass());
+			}
+			//similarity += 0.5d; //A wrong object is better than null :-)
+			final ClassSimilarity classSimilarity = ClassSimilarityCache.get(objTarget.getClass(), objCandidate.getClass());
+			final int packageDistance = classSimilarity.getPackageDistance();
+			similarity += inverseDistanceExp(packageDistance, 0.5d);
+			if (packageDistance == 0) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("same packages: " + objTarget.getClass() + " vs " + objCandidate.getClass());
+				}
+				similarity += inverseDistanceExp(classSimilarity.getClassNameEditDistance(), 0.5d);
+			}
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Similarity increases by: " + similarity);
+			}
+			this.converged = false;
+			return similarity;
+		}
+		else {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Objects of same classes: " + objTarget.getClass() + " vs " + objCandidate.getClass());
+			}
+			similarity += 1.0d;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Similarity increases by: " + similarity);
+			}
+		}
+		
+		logger.debug("Looking into fields");
+		// constants and fields excluded by filter are already out of the plan
+		final FieldPlan plan = FieldPlan.of(objTarget.getClass());
+		final Field[] fields = plan.fields;
+		for (int i = 0; i < fields.length; i++) {
+			try {
+				final Field aField = fields[i];
+					
+				// skip comparison of don't care fields
+				final boolean dontCare = (this.targetIsPartiallySymbolicObject && !this.fieldsToBeConsidered.contains(objTarget, plan.indices[i]));
+				if (logger.isDebugEnabled()) {
+					logger.debug((dontCare ? " Don't care: " : " field: ") + plan.descriptions[i]);
+				}
+				if (dontCare) {
+					continue;
+				}
+				if (plan.readers[i] != null) {
+					similarity += handleEdgeToPrimitiveField(plan.readers[i], aField, objTarget, objCandidate);
+				}
+				else {					
+					assert (this.visitedInTarget.containsKey(objTarget));
+					final int subElementId = this.paths.field(this.visitedInTarget.get(objTarget), aField);
+					similarity += handleEdgeToSubElement(aField.get(objTarget), aField.get(objCandidate), subElementId); 
+				}
+
+			} catch (Exception e) {
+				logger.error("Error during Similarity calculation", e);
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("With fields: Similarity increases by: " + similarity);
+		}
+		return similarity;
+	}
+
+	private double similarityWithArray(Object objTarget, Object objCandidate) {
+		if (LeafSimilarity.isLeaf(objTarget)) {
+			return this.leafSimilarity.similarityWithPrimitiveArray(objTarget, objCandidate);
+		}
+		logger.debug("Handling array");
+		double similarity = 0.0d;
+		try {
+			final Object[] arrayTarget = Object[].class.cast(objTarget);
+			final Object[] arrayCandidate = Object[].class.cast(objCandidate);
+			
+			//similarity depends on arrays being of same type and on their length distance
+			int lengthCommon = Math.min(Array.getLength(arrayTarget), Array.getLength(arrayCandidate));
+			int lengthDistance = Math.max(Array.getLength(arrayTarget), Array.getLength(arrayCandidate)) - lengthCommon;
+			if (lengthDistance == 0.0d) similarity += 1.0;
+			else {
+				similarity += inverseDistanceExp(lengthDistance, 1.0d);
+				this.converged = false;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Similarity increases by: " + similarity);
+			}
+
+			logger.debug("Looking into array items");
+			for (int i = 0; i <  lengthCommon; i++) { 
+				if (this.targetIsPartiallySymbolicObject && 
+						!this.fieldsToBeConsidered.contains(objTarget, i)) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Don't care: at array item [" + i +"]");
+					}
+				}
+				else {
+					assert (this.visitedInTarget.containsKey(objTarget));
+					final int subElementId = this.paths.item(this.visitedInTarget.get(objTarget), i);
+					similarity += handleEdgeToSubElement(arrayTarget[i], arrayCandidate[i], subElementId); 
+				}
+			}	
+		} catch (IllegalArgumentException | ClassCastException e) {
+			logger.error("Error during cast", e);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Arrays differently typed: Similarity increases by: " + similarity);
+			}
+			this.converged = false;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("With array items: Similarity increases by: " + similarity);
+		}
+		return similarity;
+	}
+
+	private double similarityWithNull(Object objTarget, Object objCandidate) {
+		logger.debug("Handling null");
+		double similarity = 0.0d;
+		if (objTarget == null) {	
+			logger.debug("Target is null");
+			if (objCandidate == null) {
+				logger.debug("Candidate is null");
+				similarity += 1.0d;
+			}
+		}
+		else if (objCandidate == null) {
+			logger.debug("Target is not null, but candidate is null");
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Similarity increases by: " + similarity);
+		}
+		//else: both non null, nothing to handle here
+		if (similarity != 1.0d) this.converged = false;
+		return similarity;
+	}
+
+	private double handleEdgeToSubElement(Object objTarget, Object objCandidate, int subElementId) {
+		
+		double similarity = 0.0d;
+		
+		similarity += similarityWithEdge(objTarget, objCandidate, subElementId);
+		
+		// null values and corner cases are managed at the  beginning of the iteration
+		boolean bothNewObjects = !this.visitedInTarget.containsKey(objTarget) && 
+								 !this.visitedInCandidate.containsKey(objCandidate);
+		//the paths are rebuilt as strings only for logging
+		final String subElementPath = (logger.isDebugEnabled() ? this.paths.toString(subElementId) : null);
+		if (mustIgnoreAliases(objTarget)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("may visit multiple times element in target:" + subElementPath);
+			}
+		}
+		else {
+			this.visitedInTarget.put(objTarget, subElementId);
+			if (logger.isDebugEnabled()) {
+				logger.debug("mark as visited element in target:" + subElementPath);
+			}
+		}
+		if (mustIgnoreAliases(objCandidate)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("may visit multiple times element in candidate:" + subElementPath);
+			}
+		} 
+		else {
+			this.visitedInCandidate.put(objCandidate, subElementId);
+			if (logger.isDebugEnabled()) {
+				logger.debug("mark as visited element in candidate:" + subElementPath);
+			}
+		}
+		if (bothNewObjects) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Adding sub elements to the worklist:" + subElementPath);
+			}
+			this.worklist.add(objTarget, objCandidate);
+		}
+		
+		return similarity;
+	}
+
+	/* The values of the primitive fields are never aliased, thus their 
+	 * edges match, and are compared in place rather than through the
+	 * worklist, with no boxing */
+	private double handleEdgeToPrimitiveField(PrimitiveFieldReader reader, Field aField, Object objTarget, Object objCandidate) {
+		double similarity = (this.considerAliases ? 1.0d : 0.0d);
+		similarity += this.leafSimilarity.similarityWithPrimitiveField(reader, aField, objTarget, objCandidate);
+		return similarity;
+	}
+
+	static boolean mustIgnoreAliases(Object obj) {
+		return 	obj == null || 
+				ReflectionUtils.isPrimitive(obj) ||
+				ReflectionUtils.isString(obj);
+	}
+	
+	private double similarityWithEdge(Object objTarget, Object objCandidate, int subElementId) {
+		if (!this.considerAliases) {
+			return 0.0d;
+		}
+
+		logger.debug("Handling edge");
+		double similarity = 0.0d;
+		
+		assert (subElementId != PathTree.NONE);
+		
+		//objects whose aliases are ignored have the empty path
+		int targetId = PathTree.NONE;
+		int candidateId = PathTree.NONE;
+		if (!mustIgnoreAliases(objTarget)) {
+			targetId = this.visitedInTarget.get(objTarget);
+			if (targetId == IdentityIntMap.ABSENT) {
+				logger.debug("Target is edge to a new object");
+				targetId = subElementId;
+			}
+		}
+		if (!mustIgnoreAliases(objCandidate)) {
+			candidateId = this.visitedInCandidate.get(objCandidate);
+			if (candidateId == IdentityIntMap.ABSENT) {
+				logger.debug("Candidate is edge to a new object");
+				candidateId = subElementId;
+			}
+		}
+		
+		if (targetId == candidateId) {
+			logger.debug("Matching edges");
+			similarity += 1.0d;
+		}
+		else {	
+			logger.debug("Non-matching edges");
+			//double edgeDistance = LevenshteinDistance.calculateDistance(targetId, candidateId);
+			int edgeDistance = this.paths.edgeDistance(targetId, candidateId);
+			assert (edgeDistance != 0);
+			similarity += inverseDistanceExp(edgeDistance, 1.0d);
+			this.converged = false;
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Similarity increases by: " + similarity);
+		}
+		return similarity;
+
+	}
+
+}
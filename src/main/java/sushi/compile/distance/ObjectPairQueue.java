@@ -0,0 +1,82 @@
+package sushi.compile.distance;
+
+/**
+ * A FIFO queue of pairs of objects, stored in two parallel
+ * ring buffers that grow as needed and are kept across uses,
+ * so that enqueuing and dequeuing a pair allocates nothing.
+ */
+final class ObjectPairQueue {
+	private static final int INITIAL_CAPACITY = 64; //must be a power of 2
+
+	private Object[] firsts = new Object[INITIAL_CAPACITY];
+	private Object[] seconds = new Object[INITIAL_CAPACITY];
+	private int head = 0;
+	private int size = 0;
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	void add(Object first, Object second) {
+		if (this.size == this.firsts.length) {
+			grow();
+		}
+		final int tail = (this.head + this.size) & (this.firsts.length - 1);
+		this.firsts[tail] = first;
+		this.seconds[tail] = second;
+		++this.size;
+	}
+
+	/**
+	 * @return the first object of the pair at the head of the queue.
+	 */
+	Object headFirst() {
+		assert (this.size > 0);
+		return this.firsts[this.head];
+	}
+
+	/**
+	 * @return the second object of the pair at the head of the queue.
+	 */
+	Object headSecond() {
+		assert (this.size > 0);
+		return this.seconds[this.head];
+	}
+
+	/**
+	 * Removes the pair at the head of the queue.
+	 */
+	void removeHead() {
+		assert (this.size > 0);
+		this.firsts[this.head] = null;
+		this.seconds[this.head] = null;
+		this.head = (this.head + 1) & (this.firsts.length - 1);
+		--this.size;
+	}
+
+	/**
+	 * Empties the queue, keeping its capacity but
+	 * not the references to the enqueued objects.
+	 */
+	void clear() {
+		while (this.size > 0) {
+			removeHead();
+		}
+		this.head = 0;
+	}
+
+	private void grow() {
+		final int capacity = this.firsts.length;
+		final Object[] newFirsts = new Object[capacity << 1];
+		final Object[] newSeconds = new Object[capacity << 1];
+		//unroll the ring so that the head is at position 0
+		final int headToEnd = capacity - this.head;
+		System.arraycopy(this.firsts, this.head, newFirsts, 0, headToEnd);
+		System.arraycopy(this.firsts, 0, newFirsts, headToEnd, this.head);
+		System.arraycopy(this.seconds, this.head, newSeconds, 0, headToEnd);
+		System.arraycopy(this.seconds, 0, newSeconds, headToEnd, this.head);
+		this.firsts = newFirsts;
+		this.seconds = newSeconds;
+		this.head = 0;
+	}
+}
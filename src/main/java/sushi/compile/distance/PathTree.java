@@ -0,0 +1,208 @@
+package sushi.compile.distance;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * The access paths of the nodes of an object graph visit, e.g.,
+ * {@code <ROOT>.obj0.next[2].value}, stored as a tree of {@code int}
+ * nodes so that no path string is built while visiting. Every node
+ * is a segment (root, field or array item) appended to its parent
+ * node; the {@link EdgeDistance} between two paths is computed on
+ * the tree, and the path strings are built only when asked for,
+ * e.g., for logging. The tree keeps its storage across uses.
+ */
+final class PathTree {
+	/** The empty path. */
+	static final int NONE = -1;
+
+	private static final String ROOT_PREFIX = "<ROOT>.obj";
+	private static final int INITIAL_CAPACITY = 64;
+	private static final byte ROOT = 0;
+	private static final byte FIELD = 1;
+	private static final byte ITEM = 2;
+	private static final int[] POWERS_OF_TEN = {
+		1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000
+	};
+
+	private int[] parents = new int[INITIAL_CAPACITY];
+	private int[] depths = new int[INITIAL_CAPACITY];
+	private int[] lengths = new int[INITIAL_CAPACITY];
+	private byte[] kinds = new byte[INITIAL_CAPACITY];
+	private int[] numbers = new int[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * @param index a nonnegative {@code int}.
+	 * @return a new node for the path {@code <ROOT>.obj<index>}.
+	 */
+	int root(int index) {
+		return add(NONE, ROOT, index, null, ROOT_PREFIX.length() + digits(index));
+	}
+
+	/**
+	 * @param parent a node.
+	 * @param field a {@link Field}.
+	 * @return a new node for the path of {@code parent}
+	 *         followed by {@code .<field name>}.
+	 */
+	int field(int parent, Field field) {
+		final String name = field.getName();
+		return add(parent, FIELD, 0, name, 1 + name.length());
+	}
+
+	/**
+	 * @param parent a node.
+	 * @param index a nonnegative {@code int}.
+	 * @return a new node for the path of {@code parent}
+	 *         followed by {@code [<index>]}.
+	 */
+	int item(int parent, int index) {
+		return add(parent, ITEM, index, null, 2 + digits(index));
+	}
+
+	/**
+	 * Forgets all the nodes, keeping the storage.
+	 */
+	void clear() {
+		Arrays.fill(this.names, 0, this.size, null);
+		this.size = 0;
+	}
+
+	/**
+	 * Same as {@link EdgeDistance#calculateDistance(String, String)}
+	 * on the paths of two nodes.
+	 *
+	 * @param s a node or {@link #NONE}.
+	 * @param t a node or {@link #NONE}.
+	 * @return the edge distance between the paths of {@code s} and {@code t}.
+	 */
+	int edgeDistance(int s, int t) {
+		final int sLength = (s == NONE) ? 0 : this.lengths[s];
+		final int tLength = (t == NONE) ? 0 : this.lengths[t];
+
+		if (sLength == 0) {
+			return tLength;
+		} else if (tLength == 0) {
+			return sLength;
+		}
+
+		final int countMissing = sLength - commonPrefixLength(s, t);
+		return (countMissing != 0) ? countMissing : tLength - sLength;
+	}
+
+	/**
+	 * @param node a node or {@link #NONE}.
+	 * @return the path of {@code node}.
+	 */
+	String toString(int node) {
+		if (node == NONE) {
+			return "";
+		}
+		final StringBuilder sb = new StringBuilder(this.lengths[node]);
+		sb.setLength(this.lengths[node]);
+		for (int n = node; n != NONE; n = this.parents[n]) {
+			final int start = (this.parents[n] == NONE) ? 0 : this.lengths[this.parents[n]];
+			for (int k = 0; k < this.lengths[n] - start; ++k) {
+				sb.setCharAt(start + k, segmentCharAt(n, k));
+			}
+		}
+		return sb.toString();
+	}
+
+	private int add(int parent, byte kind, int number, String name, int segmentLength) {
+		if (this.size == this.parents.length) {
+			grow();
+		}
+		final int node = this.size++;
+		this.parents[node] = parent;
+		this.depths[node] = (parent == NONE) ? 0 : this.depths[parent] + 1;
+		this.lengths[node] = (parent == NONE) ? segmentLength : this.lengths[parent] + segmentLength;
+		this.kinds[node] = kind;
+		this.numbers[node] = number;
+		this.names[node] = name;
+		return node;
+	}
+
+	private int commonPrefixLength(int s, int t) {
+		//climbs to the nearest common ancestor, remembering the
+		//children of it that are on the way from s and t
+		int a = s, b = t;
+		int belowA = NONE, belowB = NONE;
+		while (this.depths[a] > this.depths[b]) {
+			belowA = a;
+			a = this.parents[a];
+		}
+		while (this.depths[b] > this.depths[a]) {
+			belowB = b;
+			b = this.parents[b];
+		}
+		if (a == b) {
+			//one path is a prefix of the other
+			return this.lengths[a];
+		}
+		while (a != b) {
+			belowA = a;
+			a = this.parents[a];
+			belowB = b;
+			b = this.parents[b];
+		}
+
+		//the paths agree up to the common ancestor, then they agree on
+		//a prefix of the segments that follow it; no segment is a proper
+		//prefix of a sibling segment followed by the separator of the
+		//next one, thus the agreement stops within these segments
+		final int common = (a == NONE) ? 0 : this.lengths[a];
+		final int lengthA = segmentLength(belowA);
+		final int lengthB = segmentLength(belowB);
+		final int minLength = Math.min(lengthA, lengthB);
+		int k = 0;
+		while (k < minLength && segmentCharAt(belowA, k) == segmentCharAt(belowB, k)) {
+			++k;
+		}
+		return common + k;
+	}
+
+	private int segmentLength(int node) {
+		final int parent = this.parents[node];
+		return (parent == NONE) ? this.lengths[node] : this.lengths[node] - this.lengths[parent];
+	}
+
+	private char segmentCharAt(int node, int k) {
+		switch (this.kinds[node]) {
+		case ROOT:
+			return (k < ROOT_PREFIX.length()) ? ROOT_PREFIX.charAt(k) : digitAt(this.numbers[node], k - ROOT_PREFIX.length());
+		case FIELD:
+			return (k == 0) ? '.' : this.names[node].charAt(k - 1);
+		default: //ITEM
+			if (k == 0) {
+				return '[';
+			}
+			final int number = this.numbers[node];
+			return (k == digits(number) + 1) ? ']' : digitAt(number, k - 1);
+		}
+	}
+
+	private static int digits(int number) {
+		int digits = 1;
+		while (digits < POWERS_OF_TEN.length && number >= POWERS_OF_TEN[digits]) {
+			++digits;
+		}
+		return digits;
+	}
+
+	private static char digitAt(int number, int position) {
+		return (char) ('0' + (number / POWERS_OF_TEN[digits(number) - 1 - position]) % 10);
+	}
+
+	private void grow() {
+		final int capacity = this.parents.length << 1;
+		this.parents = Arrays.copyOf(this.parents, capacity);
+		this.depths = Arrays.copyOf(this.depths, capacity);
+		this.lengths = Arrays.copyOf(this.lengths, capacity);
+		this.kinds = Arrays.copyOf(this.kinds, capacity);
+		this.numbers = Arrays.copyOf(this.numbers, capacity);
+		this.names = Arrays.copyOf(this.names, capacity);
+	}
+}
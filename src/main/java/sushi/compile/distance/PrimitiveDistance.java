@@ -2,13 +2,75 @@ package sushi.compile.distance;
 
 import java.lang.reflect.Field;
 
+import sushi.compile.reflection.PrimitiveFieldReader;
+import sushi.logging.Logger;
 import sushi.util.ArrayUtils;
 import sushi.util.ReflectionUtils;
 
 public class PrimitiveDistance {
+	private static final Logger logger = new Logger(PrimitiveDistance.class);
 	private static final double NAN_WEIGHT = 2000.0d;
 
 	public static double distance(Field f1, Object obj1, Field f2, Object obj2) {
+		if (f1.equals(f2)) {
+			return distance(PrimitiveFieldReader.of(f1), f1, obj1, obj2);
+		}
+		final PrimitiveFieldReader r1 = PrimitiveFieldReader.of(f1);
+		final PrimitiveFieldReader r2 = PrimitiveFieldReader.of(f2);
+		if (r1.getType() != r2.getType()) {
+			//fields of different types (or not primitive): let reflection convert the values
+			return reflectiveDistance(f1, obj1, f2, obj2);
+		}
+		return distance(r1, f1, obj1, obj2, r2, f2);
+	}
+
+	/**
+	 * Computes the distance between the values of the same field of 
+	 * two objects.
+	 * 
+	 * @param reader the {@link PrimitiveFieldReader} of {@code field}, 
+	 *        e.g., cached by the caller.
+	 * @param field a {@link Field}.
+	 * @param obj1 an {@link Object} with {@code field}, or {@code null}
+	 *        if {@code field} is static.
+	 * @param obj2 an {@link Object} with {@code field}, or {@code null}
+	 *        if {@code field} is static.
+	 * @return the distance between the values of {@code field} in 
+	 *         {@code obj1} and in {@code obj2}.
+	 */
+	public static double distance(PrimitiveFieldReader reader, Field field, Object obj1, Object obj2) {
+		return distance(reader, field, obj1, obj2, reader, field);
+	}
+
+	private static double distance(PrimitiveFieldReader r1, Field f1, Object obj1, Object obj2, PrimitiveFieldReader r2, Field f2) {
+		try {
+			switch (r1.getType()) {
+			case PrimitiveFieldReader.INT:
+				return intDistance(r1.getInt(obj1), r2.getInt(obj2));
+			case PrimitiveFieldReader.CHAR:
+				return charDistance(r1.getChar(obj1), r2.getChar(obj2));
+			case PrimitiveFieldReader.SHORT:
+				return shortDistance(r1.getShort(obj1), r2.getShort(obj2));
+			case PrimitiveFieldReader.LONG:
+				return longDistance(r1.getLong(obj1), r2.getLong(obj2));
+			case PrimitiveFieldReader.FLOAT:
+				return floatDistance(r1.getFloat(obj1), r2.getFloat(obj2));
+			case PrimitiveFieldReader.DOUBLE:
+				return doubleDistance(r1.getDouble(obj1), r2.getDouble(obj2));
+			case PrimitiveFieldReader.BOOLEAN:
+				return booleanDistance(r1.getBoolean(obj1), r2.getBoolean(obj2));
+			case PrimitiveFieldReader.BYTE:
+				return byteDistance(r1.getByte(obj1), r2.getByte(obj2));
+			default:
+				return reflectiveDistance(f1, obj1, f2, obj2);
+			}
+		} catch (IllegalArgumentException e) {
+			logger.error("Error while reading field " + f1.getName() + " or " + f2.getName(), e);
+			return 0.0d;
+		}
+	}
+
+	private static double reflectiveDistance(Field f1, Object obj1, Field f2, Object obj2) {
 		double distance = 0.0d;
 		
 		Class<?> f1Type = f1.getType().getComponentType() == null ? f1.getType() : f1.getType().getComponentType();
@@ -43,10 +105,8 @@ public class PrimitiveDistance {
 				distance = distance(obj1, obj2);
 			}
 			
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
+		} catch (IllegalArgumentException | IllegalAccessException e) {
+			logger.error("Error while reading field " + f1.getName() + " or " + f2.getName(), e);
 		}
 		
 		return distance;
@@ -168,6 +228,278 @@ public class PrimitiveDistance {
 		return distance;
 	}
 	
+	/**
+	 * Computes the similarity between the first {@code length} cells 
+	 * of two arrays with the same primitive member type. Each pair of 
+	 * cells contributes {@code 1 / (1 + d)}, where {@code d} is the 
+	 * distance between the cells, thus 1 if the cells are equal and 
+	 * a value in (0, 1) otherwise.
+	 * 
+	 * @param a an array with primitive member type.
+	 * @param b an array with the same class as {@code a}.
+	 * @param length the number of cells to compare; it must not 
+	 *        exceed the length of {@code a} and of {@code b}.
+	 * @return the sum of the similarities of the compared cells, 
+	 *         a value in [0, length].
+	 * @throws IllegalArgumentException if {@code a} and {@code b} 
+	 *         are not arrays with the same primitive member type.
+	 */
+	public static double arraySimilarity(Object a, Object b, int length) {
+		if (a instanceof int[] && b instanceof int[]) {
+			return intArraySimilarity((int[]) a, (int[]) b, length);
+		}
+		else if (a instanceof char[] && b instanceof char[]) {
+			return charArraySimilarity((char[]) a, (char[]) b, length);
+		}
+		else if (a instanceof long[] && b instanceof long[]) {
+			return longArraySimilarity((long[]) a, (long[]) b, length);
+		}
+		else if (a instanceof double[] && b instanceof double[]) {
+			return doubleArraySimilarity((double[]) a, (double[]) b, length);
+		}
+		else if (a instanceof byte[] && b instanceof byte[]) {
+			return byteArraySimilarity((byte[]) a, (byte[]) b, length);
+		}
+		else if (a instanceof short[] && b instanceof short[]) {
+			return shortArraySimilarity((short[]) a, (short[]) b, length);
+		}
+		else if (a instanceof float[] && b instanceof float[]) {
+			return floatArraySimilarity((float[]) a, (float[]) b, length);
+		}
+		else if (a instanceof boolean[] && b instanceof boolean[]) {
+			return booleanArraySimilarity((boolean[]) a, (boolean[]) b, length);
+		}
+		throw new IllegalArgumentException("Not arrays of the same primitive type: " + 
+				(a == null ? null : a.getClass()) + " vs " + (b == null ? null : b.getClass()));
+	}
+
+	/**
+	 * Computes the similarity between some of the first {@code length}
+	 * cells of two arrays with the same primitive member type, as 
+	 * {@link #arraySimilarity(Object, Object, int)} does for all of them.
+	 * 
+	 * @param a an array with primitive member type.
+	 * @param b an array with the same class as {@code a}.
+	 * @param length the number of cells to compare; it must not 
+	 *        exceed the length of {@code a} and of {@code b}.
+	 * @param items the bitset of the indices of the cells to compare, 
+	 *        whose bit {@code i} is in the word {@code i >>> 6}; the 
+	 *        indices from {@code length} on are ignored.
+	 * @return the sum of the similarities of the compared cells, 
+	 *         a value in [0, {@link #countItems(long[], int) countItems(items, length)}].
+	 * @throws IllegalArgumentException if {@code a} and {@code b} 
+	 *         are not arrays with the same primitive member type.
+	 */
+	public static double arraySimilarity(Object a, Object b, int length, long[] items) {
+		if (a instanceof int[] && b instanceof int[]) {
+			return intArraySimilarity((int[]) a, (int[]) b, length, items);
+		}
+		else if (a instanceof char[] && b instanceof char[]) {
+			return charArraySimilarity((char[]) a, (char[]) b, length, items);
+		}
+		else if (a instanceof long[] && b instanceof long[]) {
+			return longArraySimilarity((long[]) a, (long[]) b, length, items);
+		}
+		else if (a instanceof double[] && b instanceof double[]) {
+			return doubleArraySimilarity((double[]) a, (double[]) b, length, items);
+		}
+		else if (a instanceof byte[] && b instanceof byte[]) {
+			return byteArraySimilarity((byte[]) a, (byte[]) b, length, items);
+		}
+		else if (a instanceof short[] && b instanceof short[]) {
+			return shortArraySimilarity((short[]) a, (short[]) b, length, items);
+		}
+		else if (a instanceof float[] && b instanceof float[]) {
+			return floatArraySimilarity((float[]) a, (float[]) b, length, items);
+		}
+		else if (a instanceof boolean[] && b instanceof boolean[]) {
+			return booleanArraySimilarity((boolean[]) a, (boolean[]) b, length, items);
+		}
+		throw new IllegalArgumentException("Not arrays of the same primitive type: " + 
+				(a == null ? null : a.getClass()) + " vs " + (b == null ? null : b.getClass()));
+	}
+
+	/**
+	 * Counts the cells of an array that are in a bitset.
+	 * 
+	 * @param items a bitset of indices, whose bit {@code i} is in the 
+	 *        word {@code i >>> 6}.
+	 * @param length the length of the array.
+	 * @return the number of the indices in {@code items} that are less 
+	 *         than {@code length}.
+	 */
+	public static int countItems(long[] items, int length) {
+		int count = 0;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			count += Long.bitCount(items[word] & wordMask(word, length));
+		}
+		return count;
+	}
+
+	/* The bits of a word of a bitset of items that are below length */
+	private static long wordMask(int word, int length) {
+		final int bitsInWord = length - (word << 6);
+		return (bitsInWord >= 64 ? -1L : (1L << bitsInWord) - 1L);
+	}
+
+	public static double intArraySimilarity(int[] a, int[] b, int length) {
+		double similarity = 0.0d;
+		for (int i = 0; i < length; i++) {
+			similarity += 1.0d / (1.0d + intDistance(a[i], b[i]));
+		}
+		return similarity;
+	}
+
+	public static double intArraySimilarity(int[] a, int[] b, int length, long[] items) {
+		double similarity = 0.0d;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				similarity += 1.0d / (1.0d + intDistance(a[i], b[i]));
+			}
+		}
+		return similarity;
+	}
+
+	public static double shortArraySimilarity(short[] a, short[] b, int length) {
+		double similarity = 0.0d;
+		for (int i = 0; i < length; i++) {
+			similarity += 1.0d / (1.0d + shortDistance(a[i], b[i]));
+		}
+		return similarity;
+	}
+
+	public static double shortArraySimilarity(short[] a, short[] b, int length, long[] items) {
+		double similarity = 0.0d;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				similarity += 1.0d / (1.0d + shortDistance(a[i], b[i]));
+			}
+		}
+		return similarity;
+	}
+
+	public static double longArraySimilarity(long[] a, long[] b, int length) {
+		double similarity = 0.0d;
+		for (int i = 0; i < length; i++) {
+			similarity += 1.0d / (1.0d + longDistance(a[i], b[i]));
+		}
+		return similarity;
+	}
+
+	public static double longArraySimilarity(long[] a, long[] b, int length, long[] items) {
+		double similarity = 0.0d;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				similarity += 1.0d / (1.0d + longDistance(a[i], b[i]));
+			}
+		}
+		return similarity;
+	}
+
+	public static double floatArraySimilarity(float[] a, float[] b, int length) {
+		double similarity = 0.0d;
+		for (int i = 0; i < length; i++) {
+			similarity += 1.0d / (1.0d + floatDistance(a[i], b[i]));
+		}
+		return similarity;
+	}
+
+	public static double floatArraySimilarity(float[] a, float[] b, int length, long[] items) {
+		double similarity = 0.0d;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				similarity += 1.0d / (1.0d + floatDistance(a[i], b[i]));
+			}
+		}
+		return similarity;
+	}
+
+	public static double doubleArraySimilarity(double[] a, double[] b, int length) {
+		double similarity = 0.0d;
+		for (int i = 0; i < length; i++) {
+			similarity += 1.0d / (1.0d + doubleDistance(a[i], b[i]));
+		}
+		return similarity;
+	}
+
+	public static double doubleArraySimilarity(double[] a, double[] b, int length, long[] items) {
+		double similarity = 0.0d;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				similarity += 1.0d / (1.0d + doubleDistance(a[i], b[i]));
+			}
+		}
+		return similarity;
+	}
+
+	public static double byteArraySimilarity(byte[] a, byte[] b, int length) {
+		double similarity = 0.0d;
+		for (int i = 0; i < length; i++) {
+			similarity += 1.0d / (1.0d + byteDistance(a[i], b[i]));
+		}
+		return similarity;
+	}
+
+	public static double byteArraySimilarity(byte[] a, byte[] b, int length, long[] items) {
+		double similarity = 0.0d;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				similarity += 1.0d / (1.0d + byteDistance(a[i], b[i]));
+			}
+		}
+		return similarity;
+	}
+
+	public static double charArraySimilarity(char[] a, char[] b, int length) {
+		// the edit distance between two single characters
+		// is 0 if they are equal, 1 otherwise
+		int mismatches = 0;
+		for (int i = 0; i < length; i++) {
+			mismatches += (a[i] == b[i] ? 0 : 1);
+		}
+		return (length - mismatches) + mismatches * 0.5d;
+	}
+
+	public static double charArraySimilarity(char[] a, char[] b, int length, long[] items) {
+		int compared = 0;
+		int mismatches = 0;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				++compared;
+				mismatches += (a[i] == b[i] ? 0 : 1);
+			}
+		}
+		return (compared - mismatches) + mismatches * 0.5d;
+	}
+
+	public static double booleanArraySimilarity(boolean[] a, boolean[] b, int length) {
+		int mismatches = 0;
+		for (int i = 0; i < length; i++) {
+			mismatches += (a[i] == b[i] ? 0 : 1);
+		}
+		return (length - mismatches) + mismatches * 0.5d;
+	}
+
+	public static double booleanArraySimilarity(boolean[] a, boolean[] b, int length, long[] items) {
+		int compared = 0;
+		int mismatches = 0;
+		for (int word = 0; word < items.length && (word << 6) < length; ++word) {
+			for (long bits = items[word] & wordMask(word, length); bits != 0; bits &= bits - 1) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				++compared;
+				mismatches += (a[i] == b[i] ? 0 : 1);
+			}
+		}
+		return (compared - mismatches) + mismatches * 0.5d;
+	}
+
 	private static double intDistance(int a, int b) {
 		return Math.abs(a - b);
 	}
@@ -271,15 +603,12 @@ public class PrimitiveDistance {
 	}
 	
 	private static double charDistance(char a, char b) {
-		String stringF1 = new String(new char[] { a });
-		String stringF2 = new String(new char[] { b });
-		return StringDistanceFunctions.distanceEditLevenshtein(stringF1, stringF2);
+		// the edit distance between two single characters
+		return a == b ? 0 : 1;
 	}
 	
 	private static double charDistance(char[] a, char[] b) {
-		String stringF1 = new String(a);
-		String stringF2 = new String(b);
-		return StringDistanceFunctions.distanceEditLevenshtein(stringF1, stringF2);
+		return StringDistanceFunctions.distanceEditLevenshtein(a, b);
 	}
 
 	private static double booleanDistance(boolean a, boolean b) {
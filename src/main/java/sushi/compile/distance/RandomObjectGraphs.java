@@ -0,0 +1,180 @@
+package sushi.compile.distance;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import sushi.compile.reflection.InitializedFields;
+
+/**
+ * Makes reproducible random object graphs, with primitive, string,
+ * array and aliased reference fields, and candidates that differ from
+ * them in a few nodes, as inputs for running the distances outside
+ * a test generator (see {@link DistanceBenchmark}). The array fields
+ * are never {@code null}, since {@link DistanceSBES} does not handle
+ * {@code null} arrays.
+ */
+final class RandomObjectGraphs {
+	/** A node of the random graphs. */
+	static final class Node {
+		int value;
+		long key;
+		double weight;
+		boolean flag;
+		String label;
+		int[] data = new int[0];
+		Node left;
+		Node right;
+		Node[] children = new Node[0];
+	}
+
+	private static final String[] FIELD_NAMES = { "value", "key", "weight", "flag", "label", "data", "left", "right", "children" };
+
+	private final Random random;
+
+	RandomObjectGraphs(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Makes a random graph.
+	 *
+	 * @param size a positive {@code int}, the number of its nodes.
+	 * @return the root of the graph; about one reference in ten is an
+	 *         alias of a node made before.
+	 */
+	Node graph(int size) {
+		final List<Node> nodes = new ArrayList<>();
+		final Node root = newNode();
+		nodes.add(root);
+		for (int i = 1; i < size; ++i) {
+			//hangs the new node from a random node
+			final Node node = newNode();
+			final Node parent = nodes.get(this.random.nextInt(nodes.size()));
+			if (parent.left == null) {
+				parent.left = node;
+			}
+			else if (parent.right == null) {
+				parent.right = node;
+			}
+			else {
+				parent.children = append(parent.children, node);
+			}
+			nodes.add(node);
+		}
+		for (Node node : nodes) {
+			if (node.right == null && this.random.nextInt(10) == 0) {
+				node.right = nodes.get(this.random.nextInt(nodes.size()));
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Copies a graph, with the same aliases, and changes a few of its nodes.
+	 *
+	 * @param root the root of a graph made by {@link #graph(int)}.
+	 * @param changeRate the probability that a node of the copy is changed,
+	 *        between 0 and 1; if 0 the copy is equal to the graph.
+	 * @return the root of the copy.
+	 */
+	Node candidate(Node root, double changeRate) {
+		final IdentityHashMap<Node, Node> copies = new IdentityHashMap<>();
+		final Node retVal = copy(root, copies);
+		final List<Node> nodes = new ArrayList<>(copies.values());
+		for (Node node : nodes) {
+			if (this.random.nextDouble() < changeRate) {
+				change(node, nodes);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Marks all the fields of the nodes of a graph, as a fully initialized
+	 * partial heap.
+	 *
+	 * @param root the root of a graph made by {@link #graph(int)}.
+	 * @return an {@link InitializedFields} with all the fields of the nodes
+	 *         reachable from {@code root}.
+	 */
+	static InitializedFields allFields(Node root) {
+		final InitializedFields retVal = new InitializedFields();
+		final IdentityHashMap<Node, Node> copies = new IdentityHashMap<>();
+		copy(root, copies); //just to collect the nodes
+		for (Node node : copies.keySet()) {
+			for (String fieldName : FIELD_NAMES) {
+				retVal.add(node, fieldName);
+			}
+		}
+		return retVal;
+	}
+
+	private Node newNode() {
+		final Node node = new Node();
+		node.value = this.random.nextInt(100);
+		node.key = this.random.nextLong();
+		node.weight = this.random.nextDouble();
+		node.flag = this.random.nextBoolean();
+		node.label = (this.random.nextInt(5) == 0 ? null : "node" + this.random.nextInt(1000));
+		if (this.random.nextInt(3) == 0) {
+			node.data = new int[1 + this.random.nextInt(16)];
+			for (int i = 0; i < node.data.length; ++i) {
+				node.data[i] = this.random.nextInt(10);
+			}
+		}
+		return node;
+	}
+
+	private void change(Node node, List<Node> nodes) {
+		switch (this.random.nextInt(5)) {
+		case 0:
+			node.value += 1 + this.random.nextInt(10);
+			break;
+		case 1:
+			node.label = (node.label == null ? "changed" : node.label + "!");
+			break;
+		case 2:
+			node.data = (node.data.length == 0 ? new int[] { 1 } : new int[0]);
+			break;
+		case 3:
+			node.left = null;
+			break;
+		default:
+			node.right = nodes.get(this.random.nextInt(nodes.size()));
+		}
+	}
+
+	private static Node copy(Node node, IdentityHashMap<Node, Node> copies) {
+		if (node == null) {
+			return null;
+		}
+		Node copy = copies.get(node);
+		if (copy != null) {
+			return copy;
+		}
+		copy = new Node();
+		copies.put(node, copy);
+		copy.value = node.value;
+		copy.key = node.key;
+		copy.weight = node.weight;
+		copy.flag = node.flag;
+		copy.label = (node.label == null ? null : new String(node.label));
+		copy.data = node.data.clone();
+		copy.left = copy(node.left, copies);
+		copy.right = copy(node.right, copies);
+		copy.children = new Node[node.children.length];
+		for (int i = 0; i < node.children.length; ++i) {
+			copy.children[i] = copy(node.children[i], copies);
+		}
+		return copy;
+	}
+
+	private static Node[] append(Node[] nodes, Node node) {
+		final Node[] retVal = new Node[nodes.length + 1];
+		System.arraycopy(nodes, 0, retVal, 0, nodes.length);
+		retVal[nodes.length] = node;
+		return retVal;
+	}
+}
@@ -1,7 +1,13 @@
 package sushi.compile.distance;
 
+import sushi.util.StringContentUtils;
+
 public interface StringDistanceFunctions {
     static int distanceEditLevenshtein(final String s, final String t) {
+        return distanceEditLevenshtein(StringContentUtils.chars(s), StringContentUtils.chars(t));
+    }
+
+    static int distanceEditLevenshtein(final char[] s, final char[] t) {
         /*
          * The difference between this impl. and the standard one is that, rather
          * than creating and retaining a matrix of size threadName.length()+1 by
@@ -15,8 +21,8 @@ public interface StringDistanceFunctions {
          * and diagonally up and to the left of the current cost count being
          * calculated).
          */
-        int sLength = (s == null) ? 0 : s.length();
-        int tLength = (t == null) ? 0 : t.length();
+        int sLength = (s == null) ? 0 : s.length;
+        int tLength = (t == null) ? 0 : t.length;
 
         if (sLength == 0) {
             return tLength;
@@ -32,11 +38,11 @@ public interface StringDistanceFunctions {
         }
 
         for (int j = 0; j < tLength; ++j) {
-            final char t_j = t.charAt(j); // jth character of t
+            final char t_j = t[j]; // jth character of t
 
             cost[0] = j + 1;
             for (int i = 0; i < sLength; i++) {
-                final int singleCost = s.charAt(i) == (t_j) ? 0 : 1;
+                final int singleCost = s[i] == (t_j) ? 0 : 1;
                 // minimum of cell to the left+1, to the top+1, diagonally left and up + cost
                 cost[i + 1] = Math.min(Math.min(cost[i] + 1, previousCost[i + 1] + 1), previousCost[i] + singleCost);
             }
@@ -54,8 +60,12 @@ public interface StringDistanceFunctions {
     }
 
     static int distanceContainment(final String superstring, final String substring) {
-        int superLength = (superstring == null) ? 0 : superstring.length();
-        int subLength = (substring == null) ? 0 : substring.length();
+        return distanceContainment(StringContentUtils.chars(superstring), StringContentUtils.chars(substring));
+    }
+
+    static int distanceContainment(final char[] superstring, final char[] substring) {
+        int superLength = (superstring == null) ? 0 : superstring.length;
+        int subLength = (substring == null) ? 0 : substring.length;
 
         if (superLength <= subLength) {
             return distanceEditLevenshtein(superstring, substring);
@@ -73,11 +83,11 @@ public interface StringDistanceFunctions {
         }
 
         for (int j = 0; j < subLength; ++j) {
-            final char substring_j = substring.charAt(j); // jth character of substring
+            final char substring_j = substring[j]; // jth character of substring
             for (int k = 0; k < superLength - subLength + 1; ++k) {
                 cost[k][k] = j + 1;
                 for (int i = k; i < k + subLength; i++) {
-                    final int singleCost = (superstring.charAt(i) == substring_j) ? 0 : 1;
+                    final int singleCost = (superstring[i] == substring_j) ? 0 : 1;
                     // minimum of cell to the left+1, to the top+1, diagonally left and up + cost
                     cost[k][i + 1] = Math.min(Math.min(cost[k][i] + 1, previousCost[k][i + 1] + 1), previousCost[k][i] + singleCost);
                 }
@@ -98,8 +108,12 @@ public interface StringDistanceFunctions {
     }
 
     static int distancePrefix(final String prefix, final String superstring) {
-        int lengthPrefix = (prefix == null) ? 0 : prefix.length();
-        int lengthSuperstring = (superstring == null) ? 0 : superstring.length();
+        return distancePrefix(StringContentUtils.chars(prefix), StringContentUtils.chars(superstring));
+    }
+
+    static int distancePrefix(final char[] prefix, final char[] superstring) {
+        int lengthPrefix = (prefix == null) ? 0 : prefix.length;
+        int lengthSuperstring = (superstring == null) ? 0 : superstring.length;
 
         if (lengthPrefix == 0) {
             return 0; //an empty string is a prefix of any string
@@ -110,7 +124,7 @@ public interface StringDistanceFunctions {
         int retVal = lengthPrefix;
         int minLength = Math.min(lengthPrefix, lengthSuperstring);
         for (int i = 0; i < minLength; ++i) {
-            if (prefix.charAt(i) == superstring.charAt(i)) { 
+            if (prefix[i] == superstring[i]) { 
                 --retVal;
             }
         }
@@ -119,6 +133,29 @@ public interface StringDistanceFunctions {
     }
 
     static int distanceSuffix(final String suffix, final String superstring) {
-        return distancePrefix(new StringBuilder(suffix).reverse().toString(), new StringBuilder(superstring).reverse().toString());
+        return distanceSuffix(StringContentUtils.chars(suffix), StringContentUtils.chars(superstring));
+    }
+
+    static int distanceSuffix(final char[] suffix, final char[] superstring) {
+        //same as distancePrefix on the reversed strings, 
+        //but scanning backwards rather than reversing
+        int lengthSuffix = (suffix == null) ? 0 : suffix.length;
+        int lengthSuperstring = (superstring == null) ? 0 : superstring.length;
+
+        if (lengthSuffix == 0) {
+            return 0; //an empty string is a suffix of any string
+        } else if (lengthSuperstring == 0) {
+            return lengthSuffix;
+        }
+
+        int retVal = lengthSuffix;
+        int minLength = Math.min(lengthSuffix, lengthSuperstring);
+        for (int i = 1; i <= minLength; ++i) {
+            if (suffix[lengthSuffix - i] == superstring[lengthSuperstring - i]) { 
+                --retVal;
+            }
+        }
+
+        return retVal;
     }
 }
@@ -0,0 +1,690 @@
+package sushi.compile.distance;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sushi.compile.reflection.InitializedFields;
+import sushi.compile.reflection.PrimitiveFieldReader;
+import sushi.logging.Logger;
+
+/**
+ * Structural fingerprints of the subgraphs of the target and of the
+ * candidate of a similarity computation, used to score at once the
+ * pairs of equal subgraphs. The fingerprint of a subgraph hashes the
+ * classes and the values of its nodes, and is computed bottom-up from
+ * the fingerprints of the subgraphs of the children of its root,
+ * Merkle style. A subgraph has a fingerprint only if it is a tree whose
+ * nodes are reached by no other edge, as only in this case the similarity
+ * of two equal subgraphs does not depend on the rest of the visit; the
+ * similarity is then the one of the target subgraph with itself, that
+ * is computed together with its fingerprint. Since different subgraphs
+ * may have the same fingerprint, a match is confirmed by comparing the
+ * subgraphs node by node. The fingerprints are cached by object identity
+ * during a computation.
+ */
+final class SubgraphFingerprints {
+	private static final Logger logger = new Logger(SubgraphFingerprints.class);
+
+	private static final long NULL_HASH = 0x5DEECE66DL;
+	private static final AtomicLong CLASS_IDS = new AtomicLong();
+	private static final ClassValue<Long> classIds = new ClassValue<Long>() {
+		@Override
+		protected Long computeValue(Class<?> clazz) {
+			return mix(0x632BE59BD9B4E019L, CLASS_IDS.incrementAndGet());
+		}
+	};
+
+	private static final int INITIAL_CAPACITY = 64; //must be a power of 2
+	private static final byte ON_STACK = 0;
+	private static final byte TREE = 1;
+	private static final byte NOT_TREE = 2;
+	private static final int NOT_A_TREE = Integer.MAX_VALUE;
+
+	private InitializedFields fieldsToBeConsidered = null;
+	private double edgeSimilarity = 1.0d;
+
+	//the target subgraphs, by slot
+	private final IdentityIntMap targetInDegrees = new IdentityIntMap();
+	private final IdentityIntMap targetSlots = new IdentityIntMap();
+	private long[] targetHashes = new long[INITIAL_CAPACITY];
+	private int[] targetSizes = new int[INITIAL_CAPACITY];
+	private double[] targetSimilarities = new double[INITIAL_CAPACITY];
+	private byte[] targetStates = new byte[INITIAL_CAPACITY];
+	private int targetCount = 0;
+
+	//the candidate subgraphs, by slot, and the slots of the nodes met by the traversals
+	private final IdentityIntMap candidateSlots = new IdentityIntMap();
+	private Object[] candidateRoots = new Object[INITIAL_CAPACITY];
+	private long[] candidateHashes = new long[INITIAL_CAPACITY];
+	private int[] candidateSizes = new int[INITIAL_CAPACITY];
+	private int candidateCount = 0;
+	private final IdentityIntMap candidateVisits = new IdentityIntMap();
+
+	//the candidate nodes whose traversal failed or would fail, with the 
+	//largest size for which it fails, or NOT_A_TREE if it fails for any size
+	private final IdentityIntMap candidateFailures = new IdentityIntMap();
+
+	//the stack of the traversals, by frame
+	private Object[] frameObjects = new Object[INITIAL_CAPACITY];
+	private Field[][] frameFields = new Field[INITIAL_CAPACITY][];
+	private int[] frameNext = new int[INITIAL_CAPACITY];
+	private long[] frameHashes = new long[INITIAL_CAPACITY];
+	private int[] frameSizes = new int[INITIAL_CAPACITY];
+	private double[] frameSimilarities = new double[INITIAL_CAPACITY];
+	private boolean[] frameTrees = new boolean[INITIAL_CAPACITY];
+	private int[] frameSlots = new int[INITIAL_CAPACITY];
+	private int frames = 0;
+
+	//the pairs of nodes still to be compared when confirming a match, 
+	//the target ones at the even positions and the candidate ones at the odd ones
+	private Object[] pairs = new Object[INITIAL_CAPACITY];
+	private int pairCount = 0;
+
+	//the candidate nodes whose subgraphs were found equal to the ones of the 
+	//target, with the target slot; the nested pairs of an equal pair are equal
+	private final IdentityIntMap candidateMatches = new IdentityIntMap();
+
+	/**
+	 * Computes the fingerprints of the subgraphs of the target.
+	 *
+	 * @param objects the objects of the computation, the targets
+	 *        at the even positions and the candidates at the odd ones.
+	 * @param initializedObjectFields the fields of the target to be
+	 *        considered, or {@code null} for all.
+	 * @param aliases whether the computation considers aliases.
+	 */
+	void prepare(Object[] objects, InitializedFields initializedObjectFields, boolean aliases) {
+		clear();
+		this.fieldsToBeConsidered = initializedObjectFields;
+		this.edgeSimilarity = (aliases ? 1.0d : 0.0d);
+		final int last = objects.length - (objects.length % 2);
+
+		//the edges from the roots count as incoming edges
+		for (int i = 0; i < last; i += 2) {
+			countInDegrees(objects[i]);
+		}
+		for (int i = 0; i < last; i += 2) {
+			if (isComposite(objects[i]) && !this.targetSlots.containsKey(objects[i])) {
+				traverseTarget(objects[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param objTarget a node of the target.
+	 * @param objCandidate a node of the candidate.
+	 * @return {@code true} iff the subgraphs of {@code objTarget} and
+	 *         of {@code objCandidate} have the same fingerprint.
+	 */
+	boolean sameSubgraph(Object objTarget, Object objCandidate) {
+		final int targetSlot = this.targetSlots.get(objTarget);
+		if (targetSlot == IdentityIntMap.ABSENT || this.targetStates[targetSlot] != TREE ||
+				objCandidate == null || objTarget.getClass() != objCandidate.getClass()) {
+			return false;
+		}
+		int candidateSlot = this.candidateSlots.get(objCandidate);
+		if (candidateSlot == IdentityIntMap.ABSENT) {
+			//a failed traversal is not repeated, so every node is walked
+			//from at most once
+			final int failedSize = this.candidateFailures.get(objCandidate);
+			if (failedSize != IdentityIntMap.ABSENT && this.targetSizes[targetSlot] <= failedSize) {
+				return false;
+			}
+			candidateSlot = traverseCandidate(objCandidate, this.targetSizes[targetSlot]);
+			if (candidateSlot == IdentityIntMap.ABSENT) {
+				return false;
+			}
+		}
+		if (this.candidateSizes[candidateSlot] != this.targetSizes[targetSlot] ||
+				this.candidateHashes[candidateSlot] != this.targetHashes[targetSlot]) {
+			return false;
+		}
+		if (this.candidateMatches.get(objCandidate) != targetSlot && !equalSubgraphs(objTarget, objCandidate)) {
+			logger.debug("Same fingerprint of different subgraphs");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param objTarget a node of the target for which
+	 *        {@link #sameSubgraph(Object, Object)} holds.
+	 * @return the similarity of the subgraph of {@code objTarget}
+	 *         with itself.
+	 */
+	double selfSimilarity(Object objTarget) {
+		return this.targetSimilarities[this.targetSlots.get(objTarget)];
+	}
+
+	/**
+	 * Forgets all the fingerprints, keeping the storage.
+	 */
+	void clear() {
+		this.fieldsToBeConsidered = null;
+		this.targetInDegrees.clear();
+		this.targetSlots.clear();
+		this.targetCount = 0;
+		this.candidateSlots.clear();
+		Arrays.fill(this.candidateRoots, 0, this.candidateCount, null);
+		this.candidateCount = 0;
+		this.candidateVisits.clear();
+		this.candidateFailures.clear();
+		this.candidateMatches.clear();
+		Arrays.fill(this.frameObjects, null);
+		Arrays.fill(this.frameFields, null);
+		this.frames = 0;
+	}
+
+	private void countInDegrees(Object root) {
+		if (!isComposite(root)) {
+			return;
+		}
+		//visits the target graph depth-first, counting the edges to each node
+		increaseInDegree(root);
+		while (this.frames > 0) {
+			final int top = this.frames - 1;
+			if (this.frameNext[top] == childCount(top)) {
+				popFrame();
+				continue;
+			}
+			final Object child;
+			try {
+				child = nextChild(top);
+			} catch (IllegalAccessException e) {
+				continue; //the traversal for the fingerprints will fail as well
+			}
+			if (isComposite(child)) {
+				increaseInDegree(child);
+			}
+		}
+	}
+
+	private void increaseInDegree(Object obj) {
+		final int inDegree = this.targetInDegrees.get(obj);
+		if (inDegree == IdentityIntMap.ABSENT) {
+			this.targetInDegrees.put(obj, 1);
+			pushFrame(obj);
+		}
+		else {
+			this.targetInDegrees.put(obj, inDegree + 1);
+		}
+	}
+
+	private void traverseTarget(Object root) {
+		pushTargetFrame(root);
+		while (this.frames > 0) {
+			final int top = this.frames - 1;
+			if (this.frameNext[top] == childCount(top)) {
+				final Object obj = this.frameObjects[top];
+				final int slot = this.frameSlots[top];
+				this.targetHashes[slot] = mix(this.frameHashes[top], this.frameSizes[top]);
+				this.targetSizes[slot] = this.frameSizes[top];
+				this.targetSimilarities[slot] = this.frameSimilarities[top];
+				this.targetStates[slot] = (this.frameTrees[top] ? TREE : NOT_TREE);
+				popFrame();
+				if (this.frames > 0) {
+					addTargetChild(this.frames - 1, obj, slot);
+				}
+				continue;
+			}
+			if (this.fieldsToBeConsidered != null && !considered(top)) {
+				this.frameTrees[top] = false;
+			}
+			final Object child;
+			try {
+				child = nextChild(top);
+			} catch (IllegalAccessException e) {
+				logger.error("Error during fingerprint calculation", e);
+				this.frameTrees[top] = false;
+				continue;
+			}
+			if (isComposite(child)) {
+				final int childSlot = this.targetSlots.get(child);
+				if (childSlot == IdentityIntMap.ABSENT) {
+					pushTargetFrame(child);
+				}
+				else if (this.targetStates[childSlot] == ON_STACK) {
+					this.frameTrees[top] = false; //a cycle
+				}
+				else {
+					addTargetChild(top, child, childSlot);
+				}
+			}
+			else {
+				addLeaf(top, child);
+			}
+		}
+	}
+
+	private void pushTargetFrame(Object obj) {
+		if (this.targetCount == this.targetHashes.length) {
+			final int capacity = this.targetCount << 1;
+			this.targetHashes = Arrays.copyOf(this.targetHashes, capacity);
+			this.targetSizes = Arrays.copyOf(this.targetSizes, capacity);
+			this.targetSimilarities = Arrays.copyOf(this.targetSimilarities, capacity);
+			this.targetStates = Arrays.copyOf(this.targetStates, capacity);
+		}
+		final int slot = this.targetCount++;
+		this.targetStates[slot] = ON_STACK;
+		this.targetSlots.put(obj, slot);
+		pushFrame(obj);
+		this.frameSlots[this.frames - 1] = slot;
+		//arrays are not compared item by item when some fields are not considered
+		if (this.fieldsToBeConsidered != null && obj.getClass().isArray()) {
+			this.frameTrees[this.frames - 1] = false;
+		}
+	}
+
+	private void addTargetChild(int frame, Object child, int childSlot) {
+		this.frameHashes[frame] = mix(this.frameHashes[frame], this.targetHashes[childSlot]);
+		this.frameSizes[frame] += this.targetSizes[childSlot];
+		this.frameSimilarities[frame] += this.edgeSimilarity + this.targetSimilarities[childSlot];
+		if (this.targetStates[childSlot] != TREE || this.targetInDegrees.get(child) != 1) {
+			this.frameTrees[frame] = false;
+		}
+	}
+
+	private int traverseCandidate(Object root, int maxSize) {
+		final int firstCandidate = this.candidateCount;
+		pushCandidateFrame(root);
+		boolean failed = false;
+		while (this.frames > 0 && !failed) {
+			final int top = this.frames - 1;
+			if (this.frameNext[top] == childCount(top)) {
+				final int slot = this.frameSlots[top];
+				final long hash = mix(this.frameHashes[top], this.frameSizes[top]);
+				final int size = this.frameSizes[top];
+				this.candidateHashes[slot] = hash;
+				this.candidateSizes[slot] = size;
+				popFrame();
+				if (this.frames > 0) {
+					this.frameHashes[this.frames - 1] = mix(this.frameHashes[this.frames - 1], hash);
+					this.frameSizes[this.frames - 1] += size;
+				}
+				continue;
+			}
+			final Object child;
+			try {
+				child = nextChild(top);
+			} catch (IllegalAccessException e) {
+				//no node on the stack can have a fingerprint
+				markNotTrees(this.frames);
+				failed = true;
+				continue;
+			}
+			if (isComposite(child)) {
+				final int visit = this.candidateVisits.get(child);
+				if (visit >= firstCandidate && visit < this.candidateCount && this.candidateRoots[visit] == child) {
+					//met twice: the subgraphs of the nodes on the stack that
+					//were pushed before it contain it twice, and if it is on
+					//the stack all the nodes on the stack reach a cycle
+					int frames = 0;
+					while (frames < this.frames && this.frameSlots[frames] < visit) {
+						++frames;
+					}
+					markNotTrees(frames < this.frames && this.frameObjects[frames] == child ? this.frames : frames);
+					failed = true;
+				}
+				else if (this.candidateCount - firstCandidate == maxSize) {
+					markTooLarge();
+					failed = true; //larger than the target
+				}
+				else {
+					pushCandidateFrame(child);
+				}
+			}
+			else {
+				addLeaf(top, child);
+			}
+		}
+		if (failed) {
+			//the nodes of the failed traversal have no fingerprint
+			while (this.frames > 0) {
+				popFrame();
+			}
+			Arrays.fill(this.candidateRoots, firstCandidate, this.candidateCount, null);
+			this.candidateCount = firstCandidate;
+			return IdentityIntMap.ABSENT;
+		}
+		//all the subgraphs of a tree are trees, thus their fingerprints are kept
+		for (int slot = firstCandidate; slot < this.candidateCount; ++slot) {
+			this.candidateSlots.put(this.candidateRoots[slot], slot);
+		}
+		return this.candidateSlots.get(root);
+	}
+
+	/* Records that the subgraph of each node on the stack is larger than
+	 * the nodes pushed after it, since it has also the child to be pushed */
+	private void markTooLarge() {
+		for (int frame = 0; frame < this.frames; ++frame) {
+			final Object obj = this.frameObjects[frame];
+			final int size = this.candidateCount - this.frameSlots[frame];
+			this.candidateFailures.put(obj, Math.max(this.candidateFailures.get(obj), size));
+		}
+	}
+
+	/* Records that the subgraphs of the bottom frames are not trees */
+	private void markNotTrees(int frames) {
+		for (int frame = 0; frame < frames; ++frame) {
+			this.candidateFailures.put(this.frameObjects[frame], NOT_A_TREE);
+		}
+	}
+
+	private void pushCandidateFrame(Object obj) {
+		if (this.candidateCount == this.candidateHashes.length) {
+			final int capacity = this.candidateCount << 1;
+			this.candidateHashes = Arrays.copyOf(this.candidateHashes, capacity);
+			this.candidateSizes = Arrays.copyOf(this.candidateSizes, capacity);
+			this.candidateRoots = Arrays.copyOf(this.candidateRoots, capacity);
+		}
+		final int slot = this.candidateCount++;
+		this.candidateRoots[slot] = obj;
+		this.candidateVisits.put(obj, slot);
+		pushFrame(obj);
+		this.frameSlots[this.frames - 1] = slot;
+	}
+
+	private void pushFrame(Object obj) {
+		if (this.frames == this.frameObjects.length) {
+			final int capacity = this.frames << 1;
+			this.frameObjects = Arrays.copyOf(this.frameObjects, capacity);
+			this.frameFields = Arrays.copyOf(this.frameFields, capacity);
+			this.frameNext = Arrays.copyOf(this.frameNext, capacity);
+			this.frameHashes = Arrays.copyOf(this.frameHashes, capacity);
+			this.frameSizes = Arrays.copyOf(this.frameSizes, capacity);
+			this.frameSimilarities = Arrays.copyOf(this.frameSimilarities, capacity);
+			this.frameTrees = Arrays.copyOf(this.frameTrees, capacity);
+			this.frameSlots = Arrays.copyOf(this.frameSlots, capacity);
+		}
+		final int frame = this.frames++;
+		this.frameObjects[frame] = obj;
+		this.frameFields[frame] = (obj.getClass().isArray() ? null : FieldPlan.of(obj.getClass()).fields);
+		this.frameNext[frame] = 0;
+		this.frameHashes[frame] = classId(obj.getClass());
+		this.frameSizes[frame] = 1;
+		this.frameSimilarities[frame] = 1.0d; //same class, or same length
+		this.frameTrees[frame] = true;
+	}
+
+	private void popFrame() {
+		final int frame = --this.frames;
+		this.frameObjects[frame] = null;
+		this.frameFields[frame] = null;
+	}
+
+	private int childCount(int frame) {
+		final Field[] fields = this.frameFields[frame];
+		return (fields == null ? Array.getLength(this.frameObjects[frame]) : fields.length);
+	}
+
+	private Object nextChild(int frame) throws IllegalAccessException {
+		final Object obj = this.frameObjects[frame];
+		final Field[] fields = this.frameFields[frame];
+		final int next = this.frameNext[frame]++;
+		return (fields == null ? ((Object[]) obj)[next] : fields[next].get(obj));
+	}
+
+	private boolean considered(int frame) {
+		final Field[] fields = this.frameFields[frame];
+		return (fields == null ||
+				this.fieldsToBeConsidered.contains(this.frameObjects[frame], FieldPlan.of(this.frameObjects[frame].getClass()).indices[this.frameNext[frame]]));
+	}
+
+	private void addLeaf(int frame, Object leaf) {
+		this.frameHashes[frame] = mix(this.frameHashes[frame], leafHash(leaf));
+		//a leaf scores 1 with an equal one: nulls, strings, boxed primitives
+		//and arrays of (boxed) primitives
+		this.frameSimilarities[frame] += this.edgeSimilarity + 1.0d;
+	}
+
+	/* Compares two subgraphs node by node; both are trees, since they 
+	 * have fingerprints, thus the comparison ends */
+	private boolean equalSubgraphs(Object rootTarget, Object rootCandidate) {
+		pushPair(rootTarget, rootCandidate);
+		boolean equal = true;
+		while (this.pairCount > 0 && equal) {
+			final Object objCandidate = this.pairs[--this.pairCount];
+			this.pairs[this.pairCount] = null;
+			final Object objTarget = this.pairs[--this.pairCount];
+			this.pairs[this.pairCount] = null;
+			final int targetSlot = this.targetSlots.get(objTarget);
+			if (this.candidateMatches.get(objCandidate) == targetSlot) {
+				continue; //already compared
+			}
+			this.candidateMatches.put(objCandidate, targetSlot);
+			if (objTarget.getClass() != objCandidate.getClass()) {
+				equal = false;
+			}
+			else if (objTarget.getClass().isArray()) {
+				final Object[] itemsTarget = (Object[]) objTarget;
+				final Object[] itemsCandidate = (Object[]) objCandidate;
+				equal = (itemsTarget.length == itemsCandidate.length);
+				for (int i = 0; i < itemsTarget.length && equal; ++i) {
+					equal = equalChildren(itemsTarget[i], itemsCandidate[i]);
+				}
+			}
+			else {
+				final FieldPlan plan = FieldPlan.of(objTarget.getClass());
+				for (int i = 0; i < plan.fields.length && equal; ++i) {
+					try {
+						equal = (plan.readers[i] == null ? 
+								equalChildren(plan.fields[i].get(objTarget), plan.fields[i].get(objCandidate)) :
+								equalPrimitiveFields(plan.readers[i], objTarget, objCandidate));
+					} catch (IllegalAccessException e) {
+						logger.error("Error during fingerprint calculation", e);
+						equal = false;
+					}
+				}
+			}
+		}
+		Arrays.fill(this.pairs, 0, this.pairCount, null);
+		this.pairCount = 0;
+		if (!equal) {
+			//some of the recorded pairs may be unequal, but a mismatch is rare
+			this.candidateMatches.clear();
+		}
+		return equal;
+	}
+
+	/* Compares two leaves at once, or pushes two nodes to be compared */
+	private boolean equalChildren(Object childTarget, Object childCandidate) {
+		final boolean composite = isComposite(childTarget);
+		if (composite != isComposite(childCandidate)) {
+			return false;
+		}
+		if (!composite) {
+			return equalLeaves(childTarget, childCandidate);
+		}
+		pushPair(childTarget, childCandidate);
+		return true;
+	}
+
+	private void pushPair(Object objTarget, Object objCandidate) {
+		if (this.pairCount == this.pairs.length) {
+			this.pairs = Arrays.copyOf(this.pairs, this.pairCount << 1);
+		}
+		this.pairs[this.pairCount++] = objTarget;
+		this.pairs[this.pairCount++] = objCandidate;
+	}
+
+	private static boolean equalPrimitiveFields(PrimitiveFieldReader reader, Object obj1, Object obj2) {
+		switch (reader.getType()) {
+		case PrimitiveFieldReader.INT:
+			return reader.getInt(obj1) == reader.getInt(obj2);
+		case PrimitiveFieldReader.CHAR:
+			return reader.getChar(obj1) == reader.getChar(obj2);
+		case PrimitiveFieldReader.SHORT:
+			return reader.getShort(obj1) == reader.getShort(obj2);
+		case PrimitiveFieldReader.LONG:
+			return reader.getLong(obj1) == reader.getLong(obj2);
+		case PrimitiveFieldReader.FLOAT:
+			return Float.floatToRawIntBits(reader.getFloat(obj1)) == Float.floatToRawIntBits(reader.getFloat(obj2));
+		case PrimitiveFieldReader.DOUBLE:
+			return Double.doubleToRawLongBits(reader.getDouble(obj1)) == Double.doubleToRawLongBits(reader.getDouble(obj2));
+		case PrimitiveFieldReader.BOOLEAN:
+			return reader.getBoolean(obj1) == reader.getBoolean(obj2);
+		case PrimitiveFieldReader.BYTE:
+			return reader.getByte(obj1) == reader.getByte(obj2);
+		default:
+			return false;
+		}
+	}
+
+	private static boolean equalLeaves(Object leaf1, Object leaf2) {
+		if (leaf1 == null || leaf2 == null) {
+			return leaf1 == leaf2;
+		}
+		if (leaf1.getClass() != leaf2.getClass()) {
+			return false;
+		}
+		if (leaf1 instanceof String) {
+			return leaf1.equals(leaf2);
+		}
+		else if (leaf1 instanceof Number || leaf1 instanceof Character || leaf1 instanceof Boolean) {
+			return primitiveBits(leaf1) == primitiveBits(leaf2);
+		}
+		else if (leaf1 instanceof Object[]) {
+			final Object[] items1 = (Object[]) leaf1;
+			final Object[] items2 = (Object[]) leaf2;
+			if (items1.length != items2.length) {
+				return false;
+			}
+			for (int i = 0; i < items1.length; ++i) {
+				if (!equalLeaves(items1[i], items2[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return equalPrimitiveArrays(leaf1, leaf2);
+	}
+
+	private static boolean equalPrimitiveArrays(Object array1, Object array2) {
+		if (array1 instanceof int[]) {
+			return Arrays.equals((int[]) array1, (int[]) array2);
+		}
+		else if (array1 instanceof long[]) {
+			return Arrays.equals((long[]) array1, (long[]) array2);
+		}
+		else if (array1 instanceof double[]) {
+			return Arrays.equals((double[]) array1, (double[]) array2);
+		}
+		else if (array1 instanceof float[]) {
+			return Arrays.equals((float[]) array1, (float[]) array2);
+		}
+		else if (array1 instanceof char[]) {
+			return Arrays.equals((char[]) array1, (char[]) array2);
+		}
+		else if (array1 instanceof short[]) {
+			return Arrays.equals((short[]) array1, (short[]) array2);
+		}
+		else if (array1 instanceof byte[]) {
+			return Arrays.equals((byte[]) array1, (byte[]) array2);
+		}
+		return Arrays.equals((boolean[]) array1, (boolean[]) array2);
+	}
+
+	private static boolean isComposite(Object obj) {
+		return !ObjectGraphSimilarityEngine.mustIgnoreAliases(obj);
+	}
+
+	private static long classId(Class<?> clazz) {
+		return classIds.get(clazz);
+	}
+
+	private static long leafHash(Object leaf) {
+		if (leaf == null) {
+			return NULL_HASH;
+		}
+		long hash = classId(leaf.getClass());
+		if (leaf instanceof String) {
+			final String s = (String) leaf;
+			for (int i = 0; i < s.length(); ++i) {
+				hash = mix(hash, s.charAt(i));
+			}
+		}
+		else if (leaf instanceof Number || leaf instanceof Character || leaf instanceof Boolean) {
+			hash = mix(hash, primitiveBits(leaf));
+		}
+		else if (leaf instanceof Object[]) {
+			for (Object item : (Object[]) leaf) {
+				hash = mix(hash, leafHash(item));
+			}
+		}
+		else {
+			hash = primitiveArrayHash(hash, leaf);
+		}
+		return mix(hash, NULL_HASH);
+	}
+
+	private static long primitiveArrayHash(long hash, Object array) {
+		long h = hash;
+		if (array instanceof int[]) {
+			for (int item : (int[]) array) {
+				h = mix(h, item);
+			}
+		}
+		else if (array instanceof long[]) {
+			for (long item : (long[]) array) {
+				h = mix(h, item);
+			}
+		}
+		else if (array instanceof double[]) {
+			for (double item : (double[]) array) {
+				h = mix(h, Double.doubleToRawLongBits(item));
+			}
+		}
+		else if (array instanceof float[]) {
+			for (float item : (float[]) array) {
+				h = mix(h, Float.floatToRawIntBits(item));
+			}
+		}
+		else if (array instanceof char[]) {
+			for (char item : (char[]) array) {
+				h = mix(h, item);
+			}
+		}
+		else if (array instanceof short[]) {
+			for (short item : (short[]) array) {
+				h = mix(h, item);
+			}
+		}
+		else if (array instanceof byte[]) {
+			for (byte item : (byte[]) array) {
+				h = mix(h, item);
+			}
+		}
+		else {
+			for (boolean item : (boolean[]) array) {
+				h = mix(h, item ? 1L : 0L);
+			}
+		}
+		return h;
+	}
+
+	private static long primitiveBits(Object boxed) {
+		if (boxed instanceof Double) {
+			return Double.doubleToRawLongBits((Double) boxed);
+		}
+		else if (boxed instanceof Float) {
+			return Float.floatToRawIntBits((Float) boxed);
+		}
+		else if (boxed instanceof Number) {
+			return ((Number) boxed).longValue();
+		}
+		else if (boxed instanceof Character) {
+			return (Character) boxed;
+		}
+		return ((Boolean) boxed ? 1L : 0L);
+	}
+
+	private static long mix(long hash, long value) {
+		long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		h ^= (h >>> 32);
+		h *= 0xD6E8FEB86659FD93L;
+		return h ^ (h >>> 32);
+	}
+
+}
@@ -1,13 +1,73 @@
 package sushi.compile.path_condition_distance;
 
 public class InverseDistances {
-	
-	public static double inverseDistanceExp(double distance, double maxValue) {		
-		return maxValue * Math.exp(-0.01d * Math.pow(distance, 2.0d)); 
+
+	/* Most distances are small integers (edit and edge distances between
+	 * strings and origins), thus the exponential factor of inverseDistanceExp
+	 * is tabled for the integer distances below a bound. */
+	public static final int DEFAULT_EXP_TABLE_BOUND = 128;
+	private static volatile double[] expTable = makeExpTable(DEFAULT_EXP_TABLE_BOUND);
+
+	private static double[] makeExpTable(int bound) {
+		final double[] table = new double[bound];
+		for (int i = 0; i < bound; ++i) {
+			table[i] = expFactor(i);
+		}
+		return table;
+	}
+
+	private static double expFactor(double distance) {
+		return Math.exp(-0.01d * Math.pow(distance, 2.0d));
+	}
+
+	/**
+	 * Sets the bound of the integer distances for which
+	 * {@link #inverseDistanceExp(double, double)} uses a
+	 * precomputed value.
+	 *
+	 * @param bound a nonnegative {@code int}; the distances
+	 *        from 0 (included) to {@code bound} (excluded)
+	 *        are precomputed.
+	 */
+	public static void setExpTableBound(int bound) {
+		if (bound < 0) {
+			throw new IllegalArgumentException("The bound of the table cannot be negative");
+		}
+		expTable = makeExpTable(bound);
 	}
-	
-	public static double inverseDistanceRatio(double distance, double maxValue) {		
+
+	public static double inverseDistanceExp(double distance, double maxValue) {
+		final double[] table = expTable;
+		final int index = (int) distance;
+		if (index == distance && index >= 0 && index < table.length) {
+			return maxValue * table[index];
+		}
+		return maxValue * expFactor(distance);
+	}
+
+	public static double inverseDistanceRatio(double distance, double maxValue) {
 		return maxValue / (1.0d + (double)distance);
 	}
 
+	/**
+	 * Applies {@link #inverseDistanceRatio(double, double)} to
+	 * many distances.
+	 *
+	 * @param distances a {@code double[]}.
+	 * @param maxValue a {@code double}.
+	 * @param result a {@code double[]} with the same length of
+	 *        {@code distances} where the inverse distances are
+	 *        stored; it can be {@code distances} itself.
+	 * @return {@code result}.
+	 */
+	public static double[] inverseDistanceRatio(double[] distances, double maxValue, double[] result) {
+		if (result.length != distances.length) {
+			throw new IllegalArgumentException("The arrays of distances and results must have the same length");
+		}
+		for (int i = 0; i < distances.length; ++i) {
+			result[i] = maxValue / (1.0d + distances[i]);
+		}
+		return result;
+	}
+
 }
@@ -3,6 +3,8 @@ package sushi.compile.path_condition_distance;
 import java.util.Arrays;
 import java.util.stream.Collectors;
 
+import sushi.compile.distance.ClassSimilarityCache;
+import sushi.compile.distance.ClassSimilarityCache.ClassSimilarity;
 import sushi.compile.distance.EdgeDistance;
 import sushi.logging.Logger;
 
@@ -81,22 +83,12 @@ public class SimilarityWithRefToFreshObject extends SimilarityWithRef {
 			similarity += sameClassSimilarity + samePackageSimilarity;
 		} else {
 			logger.debug(this.theReferenceOrigin + " refers to an object of class " + referredObject.getClass() + " rather than " + this.theReferredClass);
-			String classNameTarget = this.theReferredClass.getName();
-			int splitPoint = classNameTarget.lastIndexOf('.');
-			final String packageTarget = classNameTarget.substring(0, splitPoint);
-			classNameTarget = classNameTarget.substring(splitPoint, classNameTarget.length());
-
-			String classNameCandidate = referredObject.getClass().getName();
-			splitPoint = classNameCandidate.lastIndexOf('.');
-			final String packageCandidate = classNameCandidate.substring(0, splitPoint);
-			classNameCandidate = classNameCandidate.substring(splitPoint, classNameCandidate.length());
-
-			final int packageDistance = EdgeDistance.calculateDistance(packageTarget, packageCandidate);
+			final ClassSimilarity classSimilarity = ClassSimilarityCache.get(this.theReferredClass, referredObject.getClass());
+			final int packageDistance = classSimilarity.getPackageDistance();
 			similarity += InverseDistances.inverseDistanceExp(packageDistance, samePackageSimilarity);
 			if (packageDistance == 0) {
 				logger.debug("The packages are the same");
-				final double classNameDistance = EdgeDistance.calculateDistance(classNameTarget, classNameCandidate);
-				similarity += InverseDistances.inverseDistanceExp(classNameDistance, sameClassSimilarity);
+				similarity += InverseDistances.inverseDistanceExp(classSimilarity.getClassNameEdgeDistance(), sameClassSimilarity);
 			}
 		}
 
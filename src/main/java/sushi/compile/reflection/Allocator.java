@@ -7,7 +7,7 @@ import sun.misc.Unsafe;
 @SuppressWarnings("restriction")
 public class Allocator {
 	private static final Allocator INSTANCE = new Allocator();
-	private static final Unsafe UNSAFE; //ugly!
+	static final Unsafe UNSAFE; //ugly! (also used by PrimitiveFieldReader)
     static {
         final Field uns;
         try {
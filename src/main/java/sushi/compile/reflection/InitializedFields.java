@@ -0,0 +1,153 @@
+package sushi.compile.reflection;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * The fields of the objects of a partially symbolic target that are
+ * initialized, i.e., that must be compared. Every object, compared by
+ * identity, is associated with a bitset of the indices of its initialized
+ * fields, or of its initialized items if it is an array. The index of a
+ * field depends only on the field, not on the class of the object, thus
+ * the clients can compute it once per field (see {@link #indexOf(Field)})
+ * and test membership with no lookup nor allocation.
+ */
+public final class InitializedFields {
+	private static final ClassValue<ClassFields> CLASS_FIELDS = new ClassValue<ClassFields>() {
+		@Override
+		protected ClassFields computeValue(Class<?> clazz) {
+			return new ClassFields(clazz);
+		}
+	};
+
+	private final IdentityHashMap<Object, long[]> bits = new IdentityHashMap<>();
+
+	/**
+	 * Returns the index of a field.
+	 *
+	 * @param field a {@link Field}.
+	 * @return the index of {@code field}, that is the same in all the
+	 *         objects that have it; the fields declared by a class follow
+	 *         the ones declared by its superclasses.
+	 */
+	public static int indexOf(Field field) {
+		final ClassFields classFields = CLASS_FIELDS.get(field.getDeclaringClass());
+		final Integer index = classFields.byField.get(field);
+		if (index == null) {
+			throw new IllegalArgumentException("Field " + field + " is not declared by " + field.getDeclaringClass().getName());
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Adds a field of an object, looked up by name as {@link AccessibleObject}
+	 * does, i.e., in the class of the object first, then in its superclasses.
+	 *
+	 * @param obj an {@link Object}, not an array.
+	 * @param fieldName a {@link String}, the name of a field of {@code obj}.
+	 * @throws RuntimeException if {@code obj} has no field named {@code fieldName}.
+	 */
+	public void add(Object obj, String fieldName) {
+		for (Class<?> clazz = obj.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+			final Integer index = CLASS_FIELDS.get(clazz).byName.get(fieldName);
+			if (index != null) {
+				set(obj, index.intValue());
+				return;
+			}
+		}
+		throw new RuntimeException(new NoSuchFieldException(fieldName));
+	}
+
+	/**
+	 * Adds a field of an object.
+	 *
+	 * @param obj an {@link Object}, not an array.
+	 * @param field a {@link Field} of {@code obj}.
+	 */
+	public void add(Object obj, Field field) {
+		set(obj, indexOf(field));
+	}
+
+	/**
+	 * Adds an item of an array.
+	 *
+	 * @param array an array.
+	 * @param index a nonnegative {@code int}, the index of the item.
+	 */
+	public void addItem(Object array, int index) {
+		set(array, index);
+	}
+
+	/**
+	 * Tests a field of an object or an item of an array.
+	 *
+	 * @param obj an {@link Object}.
+	 * @param index a nonnegative {@code int}, the {@link #indexOf(Field) index}
+	 *        of a field of {@code obj}, or the index of an item if {@code obj}
+	 *        is an array.
+	 * @return {@code true} iff the field or item was added.
+	 */
+	public boolean contains(Object obj, int index) {
+		final long[] objBits = this.bits.get(obj);
+		final int word = index >>> 6;
+		return (objBits != null && word < objBits.length && (objBits[word] & (1L << index)) != 0);
+	}
+
+	/**
+	 * Returns the items of an array that were added.
+	 *
+	 * @param array an array.
+	 * @return the bitset of the indices of the items of {@code array}
+	 *         that were added, whose bit {@code i} is in the word
+	 *         {@code i >>> 6}, or {@code null} if no item was added. It
+	 *         must not be modified.
+	 */
+	public long[] itemsOf(Object array) {
+		return this.bits.get(array);
+	}
+
+	/**
+	 * Tests a field of an object.
+	 *
+	 * @param obj an {@link Object}.
+	 * @param field a {@link Field} of {@code obj}.
+	 * @return {@code true} iff the field was added.
+	 */
+	public boolean contains(Object obj, Field field) {
+		return contains(obj, indexOf(field));
+	}
+
+	private void set(Object obj, int index) {
+		final int word = index >>> 6;
+		long[] objBits = this.bits.get(obj);
+		if (objBits == null) {
+			objBits = new long[word + 1];
+			this.bits.put(obj, objBits);
+		}
+		else if (word >= objBits.length) {
+			objBits = Arrays.copyOf(objBits, word + 1);
+			this.bits.put(obj, objBits);
+		}
+		objBits[word] |= (1L << index);
+	}
+
+	/* The indices of the fields declared by a class */
+	private static final class ClassFields {
+		final int count; //of the fields declared by the class and its superclasses
+		final HashMap<Field, Integer> byField = new HashMap<>();
+		final HashMap<String, Integer> byName = new HashMap<>();
+
+		ClassFields(Class<?> clazz) {
+			final Class<?> superclass = clazz.getSuperclass();
+			int index = (superclass == null ? 0 : CLASS_FIELDS.get(superclass).count);
+			for (Field field : clazz.getDeclaredFields()) {
+				this.byField.put(field, index);
+				this.byName.put(field.getName(), index);
+				++index;
+			}
+			this.count = index;
+		}
+	}
+}
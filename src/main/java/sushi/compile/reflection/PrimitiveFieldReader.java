@@ -0,0 +1,185 @@
+package sushi.compile.reflection;
+
+import static sushi.compile.reflection.Allocator.UNSAFE;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads a field of primitive type at its offset, without the
+ * checks and the type dispatch that {@link Field} does on every
+ * access. The type of the field is tagged once, so that clients
+ * can switch on it. The reader of each field is made once, on
+ * first request. As {@link Field}, the reader reads the volatile
+ * fields with volatile semantics, and initializes the declaring class
+ * before reading a static field.
+ */
+@SuppressWarnings("restriction")
+public final class PrimitiveFieldReader {
+	public static final int INT = 0;
+	public static final int CHAR = 1;
+	public static final int SHORT = 2;
+	public static final int LONG = 3;
+	public static final int FLOAT = 4;
+	public static final int DOUBLE = 5;
+	public static final int BOOLEAN = 6;
+	public static final int BYTE = 7;
+	/** The tag of the fields that are not of primitive type. */
+	public static final int OTHER = -1;
+
+	private static final ClassValue<ConcurrentHashMap<Field, PrimitiveFieldReader>> READERS = new ClassValue<ConcurrentHashMap<Field, PrimitiveFieldReader>>() {
+		@Override
+		protected ConcurrentHashMap<Field, PrimitiveFieldReader> computeValue(Class<?> declaringClass) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private final int type;
+	private final Class<?> declaringClass;
+	private final boolean isVolatile;
+	private final Object staticBase;
+	private final long offset;
+
+	/**
+	 * Returns the reader of a field.
+	 *
+	 * @param field a {@link Field}.
+	 * @return the {@link PrimitiveFieldReader} of {@code field}; if
+	 *         {@code field} is not of primitive type, its type is
+	 *         {@link #OTHER} and it cannot read.
+	 */
+	public static PrimitiveFieldReader of(Field field) {
+		final ConcurrentHashMap<Field, PrimitiveFieldReader> readers = READERS.get(field.getDeclaringClass());
+		final PrimitiveFieldReader reader = readers.get(field);
+		if (reader != null) {
+			return reader;
+		}
+		final PrimitiveFieldReader newReader = new PrimitiveFieldReader(field);
+		final PrimitiveFieldReader oldReader = readers.putIfAbsent(field, newReader);
+		return (oldReader == null ? newReader : oldReader);
+	}
+
+	private PrimitiveFieldReader(Field field) {
+		this.type = typeTag(field.getType());
+		this.declaringClass = field.getDeclaringClass();
+		this.isVolatile = Modifier.isVolatile(field.getModifiers());
+		if (this.type == OTHER) {
+			this.staticBase = null;
+			this.offset = -1L;
+		}
+		else if (Modifier.isStatic(field.getModifiers())) {
+			this.staticBase = UNSAFE.staticFieldBase(field);
+			this.offset = UNSAFE.staticFieldOffset(field);
+		}
+		else {
+			this.staticBase = null;
+			this.offset = UNSAFE.objectFieldOffset(field);
+		}
+	}
+
+	private static int typeTag(Class<?> type) {
+		if (type == int.class) {
+			return INT;
+		}
+		else if (type == char.class) {
+			return CHAR;
+		}
+		else if (type == short.class) {
+			return SHORT;
+		}
+		else if (type == long.class) {
+			return LONG;
+		}
+		else if (type == float.class) {
+			return FLOAT;
+		}
+		else if (type == double.class) {
+			return DOUBLE;
+		}
+		else if (type == boolean.class) {
+			return BOOLEAN;
+		}
+		else if (type == byte.class) {
+			return BYTE;
+		}
+		return OTHER;
+	}
+
+	/**
+	 * @return the type tag of the field, one of {@link #INT}, {@link #CHAR},
+	 *         {@link #SHORT}, {@link #LONG}, {@link #FLOAT}, {@link #DOUBLE},
+	 *         {@link #BOOLEAN}, {@link #BYTE}, {@link #OTHER}.
+	 */
+	public int getType() {
+		return this.type;
+	}
+
+	public int getInt(Object obj) {
+		checkType(INT);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getIntVolatile(base, this.offset) : UNSAFE.getInt(base, this.offset));
+	}
+
+	public char getChar(Object obj) {
+		checkType(CHAR);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getCharVolatile(base, this.offset) : UNSAFE.getChar(base, this.offset));
+	}
+
+	public short getShort(Object obj) {
+		checkType(SHORT);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getShortVolatile(base, this.offset) : UNSAFE.getShort(base, this.offset));
+	}
+
+	public long getLong(Object obj) {
+		checkType(LONG);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getLongVolatile(base, this.offset) : UNSAFE.getLong(base, this.offset));
+	}
+
+	public float getFloat(Object obj) {
+		checkType(FLOAT);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getFloatVolatile(base, this.offset) : UNSAFE.getFloat(base, this.offset));
+	}
+
+	public double getDouble(Object obj) {
+		checkType(DOUBLE);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getDoubleVolatile(base, this.offset) : UNSAFE.getDouble(base, this.offset));
+	}
+
+	public boolean getBoolean(Object obj) {
+		checkType(BOOLEAN);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getBooleanVolatile(base, this.offset) : UNSAFE.getBoolean(base, this.offset));
+	}
+
+	public byte getByte(Object obj) {
+		checkType(BYTE);
+		final Object base = base(obj);
+		return (this.isVolatile ? UNSAFE.getByteVolatile(base, this.offset) : UNSAFE.getByte(base, this.offset));
+	}
+
+	private void checkType(int type) {
+		//reading at the offset of a field of another type would read garbage
+		if (this.type != type) {
+			throw new IllegalArgumentException("The field is not of the requested type");
+		}
+	}
+
+	private Object base(Object obj) {
+		if (this.staticBase != null) {
+			//the static initializer may not have run yet
+			UNSAFE.ensureClassInitialized(this.declaringClass);
+			return this.staticBase;
+		}
+		//reading at an offset in an object of another class would read garbage
+		if (!this.declaringClass.isInstance(obj)) {
+			throw new IllegalArgumentException("Object " + obj + " has no field of class " + this.declaringClass.getName());
+		}
+		return obj;
+	}
+}
@@ -0,0 +1,90 @@
+package sushi.coverage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import sushi.logging.Logger;
+
+/**
+ * The folders of the caches of the coverage tools. They are in the home
+ * of the user, not in the temporary folder that all the users share,
+ * and, where the file system supports it, only their owner can access
+ * them, since their content is trusted (e.g., it is bytecode that is
+ * defined).
+ */
+final class CacheFolders {
+	private static final Logger logger = new Logger(CacheFolders.class);
+
+	/** The name of the folder of the caches, in the home of the user. */
+	static final String BASE_FOLDER_NAME = ".sushi";
+
+	/** The days after which a cache file that is not used is deleted. */
+	static final int MAX_AGE_DAYS = 30;
+
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+	/**
+	 * @param name the name of a cache.
+	 * @return the {@link Path} of the default folder of the cache.
+	 */
+	static Path userFolder(String name) {
+		return Paths.get(System.getProperty("user.home"), BASE_FOLDER_NAME, name);
+	}
+
+	/**
+	 * Creates a folder, and its missing parents, accessible only by
+	 * their owner.
+	 *
+	 * @param folder the {@link Path} of the folder.
+	 * @throws IOException if the folder cannot be created, or if it
+	 *         exists and is accessible by other users.
+	 */
+	static void createPrivateDirectories(Path folder) throws IOException {
+		if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			Files.createDirectories(folder);
+			return;
+		}
+		final Path parent = folder.toAbsolutePath().getParent();
+		if (parent != null && !Files.isDirectory(parent)) {
+			createPrivateDirectories(parent);
+		}
+		if (!Files.isDirectory(folder)) {
+			Files.createDirectories(folder, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+		}
+		final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(folder);
+		if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+			throw new IOException("Cache folder " + folder + " is writable by other users");
+		}
+	}
+
+	/**
+	 * Deletes the files of a cache folder that were not modified in 
+	 * the last {@link #MAX_AGE_DAYS} days; the caches touch the files 
+	 * they use. Failures are logged and then ignored.
+	 *
+	 * @param folder the {@link Path} of the folder.
+	 * @param glob the glob of the names of the cache files.
+	 */
+	static void prune(Path folder, String glob) {
+		final long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+		try (final DirectoryStream<Path> entries = Files.newDirectoryStream(folder, glob)) {
+			for (Path entry : entries) {
+				if (Files.getLastModifiedTime(entry).toMillis() < oldest) {
+					Files.deleteIfExists(entry);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot prune the cache folder " + folder + ": " + e);
+		}
+	}
+
+	private CacheFolders() { }
+}
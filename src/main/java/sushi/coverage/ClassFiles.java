@@ -0,0 +1,60 @@
+package sushi.coverage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Reads the bytecode of the classes from the classpath, in one pass:
+ * the class files in directories are read with NIO, the ones in jars
+ * in a buffer sized after the length of the entry.
+ */
+public final class ClassFiles {
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Reads the bytecode of a class.
+	 *
+	 * @param className the binary name of a class.
+	 * @return the bytecode of the class, or {@code null} if the class
+	 *         is not in the classpath.
+	 * @throws IOException if reading fails.
+	 */
+	public static byte[] read(String className) throws IOException {
+		final URL url = ClassFiles.class.getResource('/' + className.replace('.', '/') + ".class");
+		if (url == null) {
+			return null;
+		}
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return Files.readAllBytes(Paths.get(url.toURI()));
+			} catch (URISyntaxException e) {
+				//falls back to the stream
+			}
+		}
+		final URLConnection connection = url.openConnection();
+		try (final InputStream is = connection.getInputStream()) {
+			return readFully(is, connection.getContentLength());
+		}
+	}
+
+	private static byte[] readFully(InputStream is, int sizeHint) throws IOException {
+		byte[] buffer = new byte[sizeHint >= 0 ? sizeHint + 1 : DEFAULT_BUFFER_SIZE]; //+1 to hit EOF without growing
+		int size = 0;
+		int readBytes;
+		while ((readBytes = is.read(buffer, size, buffer.length - size)) != -1) {
+			size += readBytes;
+			if (size == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length << 1);
+			}
+		}
+		return Arrays.copyOf(buffer, size);
+	}
+
+	private ClassFiles() { }
+}
@@ -0,0 +1,41 @@
+package sushi.coverage;
+
+import org.jacoco.core.runtime.IExecutionDataAccessorGenerator;
+import org.jacoco.core.runtime.RuntimeData;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates the access of the instrumented classes to their execution
+ * data through their class loader, that must be an
+ * {@link InstrumentingClassLoader}: the instrumented class looks up
+ * itself with {@link Class#forName(String)}, and passes the arguments
+ * of {@link RuntimeData#getProbes(Object[])} to the {@code equals}
+ * method of its class loader, as JaCoCo's runtimes do with their
+ * {@link RuntimeData}. Differently from JaCoCo's runtimes, the
+ * generated code does not depend on the runtime instance, thus the
+ * instrumented bytecode can be reused by all the class loaders, and
+ * cached (see {@link InstrumentedClassCache}).
+ */
+final class ClassLoaderAccessGenerator implements IExecutionDataAccessorGenerator {
+	static final ClassLoaderAccessGenerator INSTANCE = new ClassLoaderAccessGenerator();
+
+	/**
+	 * A tag of the generated code, to be changed when the code changes.
+	 */
+	static final String VERSION = "1";
+
+	private ClassLoaderAccessGenerator() { }
+
+	@Override
+	public int generateDataAccessor(long classid, String classname, int probecount, MethodVisitor mv) {
+		//Class.forName is caller sensitive: it uses the class loader
+		//of the instrumented class; differently from a class constant
+		//it is valid in the class files of all the versions
+		mv.visitLdcInsn(classname.replace('/', '.'));
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Class", "forName", "(Ljava/lang/String;)Ljava/lang/Class;", false);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false);
+		RuntimeData.generateAccessCall(classid, classname, probecount, mv);
+		return 6;
+	}
+}
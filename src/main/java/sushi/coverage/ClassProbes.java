@@ -0,0 +1,347 @@
+package sushi.coverage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.IFrame;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The map from the JaCoCo probes of a class to its instructions and
+ * branches. JaCoCo's analyzer rebuilds the instructions of a class
+ * every time it computes coverage; this class builds them once, the
+ * same way, so that the coverage of many probe arrays can be computed
+ * incrementally (see {@link CoverageAccumulator}). As in JaCoCo, every
+ * instruction has at most one predecessor, and a covered probe covers
+ * the instruction that precedes it and, transitively, the predecessors
+ * of the instruction until one is already covered.
+ */
+public final class ClassProbes {
+	/** The instruction of the probes that are in no analyzed method. */
+	static final int NO_INSTRUCTION = -1;
+
+	private final long id;
+	private final String name;
+	private final int[] probeInstructions;
+	private final int[] predecessors;
+	private final int[] branches;
+	private final int branchCount;
+
+	private ClassProbes(long id, String name, int probeCount, List<int[]> instructions) {
+		this.id = id;
+		this.name = name;
+		this.probeInstructions = new int[probeCount];
+		Arrays.fill(this.probeInstructions, NO_INSTRUCTION);
+		this.predecessors = new int[instructions.size()];
+		this.branches = new int[instructions.size()];
+		int branchCount = 0;
+		for (int i = 0; i < instructions.size(); ++i) {
+			final int[] instruction = instructions.get(i);
+			this.predecessors[i] = instruction[PREDECESSOR];
+			this.branches[i] = instruction[BRANCHES];
+			if (instruction[BRANCHES] > 1) {
+				branchCount += instruction[BRANCHES];
+			}
+			for (int k = PROBES; k < instruction.length; ++k) {
+				if (instruction[k] != NO_INSTRUCTION) {
+					this.probeInstructions[instruction[k]] = i;
+				}
+			}
+		}
+		this.branchCount = branchCount;
+	}
+
+	/**
+	 * Analyzes a class.
+	 *
+	 * @param classBytes the bytecode of a class, not instrumented.
+	 * @return the {@link ClassProbes} of the class.
+	 */
+	public static ClassProbes analyze(byte[] classBytes) {
+		final ClassReader reader = new ClassReader(classBytes);
+		final Builder builder = new Builder();
+		reader.accept(new ClassProbesAdapter(builder, false), 0);
+		return new ClassProbes(CRC64.checksum(classBytes), reader.getClassName(), builder.probeCount, builder.instructions);
+	}
+
+	/**
+	 * @return the id of the class, the same of its JaCoCo execution data.
+	 */
+	public long getId() {
+		return this.id;
+	}
+
+	/**
+	 * @return the internal name of the class.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public int getProbeCount() {
+		return this.probeInstructions.length;
+	}
+
+	public int getInstructionCount() {
+		return this.predecessors.length;
+	}
+
+	/**
+	 * @return the number of branches, counted as JaCoCo does,
+	 *         i.e., only for the instructions with more than one.
+	 */
+	public int getBranchCount() {
+		return this.branchCount;
+	}
+
+	/**
+	 * @param probe a probe id.
+	 * @return the instruction that precedes the probe, or
+	 *         {@link #NO_INSTRUCTION}.
+	 */
+	int probeInstruction(int probe) {
+		return this.probeInstructions[probe];
+	}
+
+	/**
+	 * @param instruction an instruction.
+	 * @return the predecessor of the instruction, or
+	 *         {@link #NO_INSTRUCTION}.
+	 */
+	int predecessor(int instruction) {
+		return this.predecessors[instruction];
+	}
+
+	/**
+	 * @param instruction an instruction.
+	 * @return the number of branches of the instruction.
+	 */
+	int branches(int instruction) {
+		return this.branches[instruction];
+	}
+
+	/* The layout of an instruction while building */
+	private static final int PREDECESSOR = 0;
+	private static final int BRANCHES = 1;
+	private static final int PROBES = 2;
+
+	/* Builds the instructions as org.jacoco.core.internal.analysis.ClassAnalyzer does */
+	private static final class Builder extends ClassProbesVisitor {
+		private final List<int[]> instructions = new ArrayList<>();
+		private int probeCount = 0;
+
+		@Override
+		public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+			//JaCoCo does not report the synthetic methods, but for the lambdas
+			if ((access & Opcodes.ACC_SYNTHETIC) != 0 && !name.startsWith("lambda$")) {
+				return null;
+			}
+			return new MethodBuilder(this.instructions);
+		}
+
+		@Override
+		public void visitTotalProbeCount(int count) {
+			this.probeCount = count;
+		}
+	}
+
+	/* Builds the instructions as org.jacoco.core.internal.analysis.MethodAnalyzer does */
+	private static final class MethodBuilder extends MethodProbesVisitor {
+		private final List<int[]> instructions;
+		private final List<Label> currentLabels = new ArrayList<>(2);
+		private final IdentityHashMap<Label, Integer> labelInstructions = new IdentityHashMap<>();
+		private final List<Label> jumpTargets = new ArrayList<>();
+		private final List<Integer> jumpSources = new ArrayList<>();
+		private int lastInsn = NO_INSTRUCTION;
+
+		MethodBuilder(List<int[]> instructions) {
+			this.instructions = instructions;
+		}
+
+		private void setPredecessor(int insn, int predecessor) {
+			this.instructions.get(insn)[PREDECESSOR] = predecessor;
+			++this.instructions.get(predecessor)[BRANCHES];
+		}
+
+		private void addInsn() {
+			final int insn = this.instructions.size();
+			this.instructions.add(new int[] { NO_INSTRUCTION, 0 });
+			if (this.lastInsn != NO_INSTRUCTION) {
+				setPredecessor(insn, this.lastInsn);
+			}
+			for (Label label : this.currentLabels) {
+				this.labelInstructions.put(label, insn);
+			}
+			this.currentLabels.clear();
+			this.lastInsn = insn;
+		}
+
+		private void addJump(Label target) {
+			this.jumpSources.add(this.lastInsn);
+			this.jumpTargets.add(target);
+		}
+
+		private void addProbe(int probeId) {
+			final int[] instruction = this.instructions.get(this.lastInsn);
+			++instruction[BRANCHES];
+			final int[] withProbe = Arrays.copyOf(instruction, instruction.length + 1);
+			withProbe[instruction.length] = probeId;
+			this.instructions.set(this.lastInsn, withProbe);
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			this.currentLabels.add(label);
+			if (!LabelInfo.isSuccessor(label)) {
+				this.lastInsn = NO_INSTRUCTION;
+			}
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			addInsn();
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			addInsn();
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			addInsn();
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			addInsn();
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			addInsn();
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			addInsn();
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+			addInsn();
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			addInsn();
+			addJump(label);
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			addInsn();
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			addInsn();
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			visitSwitchInsn(dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			visitSwitchInsn(dflt, labels);
+		}
+
+		private void visitSwitchInsn(Label dflt, Label[] labels) {
+			addInsn();
+			LabelInfo.resetDone(labels);
+			addJump(dflt);
+			LabelInfo.setDone(dflt);
+			for (Label label : labels) {
+				if (!LabelInfo.isDone(label)) {
+					addJump(label);
+					LabelInfo.setDone(label);
+				}
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			addInsn();
+		}
+
+		@Override
+		public void visitProbe(int probeId) {
+			addProbe(probeId);
+			this.lastInsn = NO_INSTRUCTION;
+		}
+
+		@Override
+		public void visitJumpInsnWithProbe(int opcode, Label label, int probeId, IFrame frame) {
+			addInsn();
+			addProbe(probeId);
+		}
+
+		@Override
+		public void visitInsnWithProbe(int opcode, int probeId) {
+			addInsn();
+			addProbe(probeId);
+		}
+
+		@Override
+		public void visitTableSwitchInsnWithProbes(int min, int max, Label dflt, Label[] labels, IFrame frame) {
+			visitSwitchInsnWithProbes(dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsnWithProbes(Label dflt, int[] keys, Label[] labels, IFrame frame) {
+			visitSwitchInsnWithProbes(dflt, labels);
+		}
+
+		private void visitSwitchInsnWithProbes(Label dflt, Label[] labels) {
+			addInsn();
+			LabelInfo.resetDone(dflt);
+			LabelInfo.resetDone(labels);
+			visitSwitchTarget(dflt);
+			for (Label label : labels) {
+				visitSwitchTarget(label);
+			}
+		}
+
+		private void visitSwitchTarget(Label label) {
+			if (!LabelInfo.isDone(label)) {
+				final int probeId = LabelInfo.getProbeId(label);
+				if (probeId == LabelInfo.NO_PROBE) {
+					addJump(label);
+				}
+				else {
+					addProbe(probeId);
+				}
+				LabelInfo.setDone(label);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			for (int i = 0; i < this.jumpTargets.size(); ++i) {
+				setPredecessor(this.labelInstructions.get(this.jumpTargets.get(i)), this.jumpSources.get(i));
+			}
+		}
+	}
+}
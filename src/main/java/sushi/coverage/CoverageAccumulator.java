@@ -0,0 +1,157 @@
+package sushi.coverage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionDataStore;
+
+/**
+ * Accumulates the instruction and branch coverage of a set of target
+ * classes over the execution data of many test cases. The counters are
+ * the same that a JaCoCo analysis of the merged execution data would
+ * compute, but the classes are analyzed only once (see {@link ClassProbes}),
+ * and adding the execution data of a test case costs time proportional
+ * to its probes and to the instructions it newly covers.
+ */
+public final class CoverageAccumulator {
+	private final TargetProbes targetProbes;
+	private final List<ClassState> classes = new ArrayList<>();
+	private int instructionCount = 0;
+	private int branchCount = 0;
+	private int coveredInstructionCount = 0;
+	private int coveredBranchCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param targetClassBytes the bytecodes of the target classes, not
+	 *        instrumented; the classes with the same name are considered
+	 *        once, as JaCoCo does.
+	 */
+	public CoverageAccumulator(Iterable<byte[]> targetClassBytes) {
+		this(new TargetProbes(targetClassBytes));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param targetProbes the {@link TargetProbes} of the target classes.
+	 */
+	public CoverageAccumulator(TargetProbes targetProbes) {
+		this.targetProbes = targetProbes;
+		for (ClassProbes classProbes : targetProbes.getClasses()) {
+			this.classes.add(new ClassState(classProbes));
+			this.instructionCount += classProbes.getInstructionCount();
+			this.branchCount += classProbes.getBranchCount();
+		}
+	}
+
+	/**
+	 * Adds the execution data of a test case.
+	 *
+	 * @param executionDataStore an {@link ExecutionDataStore}; the data of
+	 *        the classes that are not targets are ignored.
+	 * @return {@code true} iff the instruction or the branch coverage
+	 *         increased.
+	 * @throws IllegalStateException if the data of a target class has
+	 *         a wrong number of probes; in this case nothing is added.
+	 */
+	public boolean add(ExecutionDataStore executionDataStore) {
+		final boolean[][] probes = new boolean[this.classes.size()][];
+		for (int i = 0; i < this.classes.size(); ++i) {
+			probes[i] = TargetProbes.probesOf(this.classes.get(i).classProbes, executionDataStore);
+		}
+		final int coveredInstructionCountBefore = this.coveredInstructionCount;
+		final int coveredBranchCountBefore = this.coveredBranchCount;
+		for (int i = 0; i < this.classes.size(); ++i) {
+			if (probes[i] != null) {
+				addProbes(this.classes.get(i), probes[i]);
+			}
+		}
+		return (this.coveredInstructionCount > coveredInstructionCountBefore || this.coveredBranchCount > coveredBranchCountBefore);
+	}
+
+	/**
+	 * Adds the probes covered by a test case.
+	 *
+	 * @param bits a bitset of the probes of the {@link TargetProbes}
+	 *        of this accumulator (see {@link TargetProbes#coveredBy(ExecutionDataStore)}).
+	 * @return {@code true} iff the instruction or the branch coverage
+	 *         increased.
+	 */
+	public boolean add(long[] bits) {
+		if (bits.length != this.targetProbes.words()) {
+			throw new IllegalArgumentException("The bitset has " + bits.length + " words instead of " + this.targetProbes.words());
+		}
+		final int coveredInstructionCountBefore = this.coveredInstructionCount;
+		final int coveredBranchCountBefore = this.coveredBranchCount;
+		for (int i = 0; i < this.classes.size(); ++i) {
+			final ClassState classState = this.classes.get(i);
+			final int offset = this.targetProbes.offset(i);
+			for (int probe = 0; probe < classState.coveredProbes.length; ++probe) {
+				if (TargetProbes.isSet(bits, offset + probe)) {
+					addProbe(classState, probe);
+				}
+			}
+		}
+		return (this.coveredInstructionCount > coveredInstructionCountBefore || this.coveredBranchCount > coveredBranchCountBefore);
+	}
+
+	private void addProbes(ClassState classState, boolean[] probes) {
+		for (int probe = 0; probe < probes.length; ++probe) {
+			if (probes[probe]) {
+				addProbe(classState, probe);
+			}
+		}
+	}
+
+	private void addProbe(ClassState classState, int probe) {
+		final ClassProbes classProbes = classState.classProbes;
+		if (classState.coveredProbes[probe]) {
+			return;
+		}
+		classState.coveredProbes[probe] = true;
+		//as JaCoCo does, a probe covers the branch to it from its
+		//instruction, and the predecessors up to the first one
+		//that was already covered
+		for (int insn = classProbes.probeInstruction(probe); insn != ClassProbes.NO_INSTRUCTION; insn = classProbes.predecessor(insn)) {
+			final boolean firstBranch = (classState.coveredBranches[insn]++ == 0);
+			if (classProbes.branches(insn) > 1) {
+				++this.coveredBranchCount;
+			}
+			if (!firstBranch) {
+				break;
+			}
+			++this.coveredInstructionCount;
+		}
+	}
+
+	public int getInstructionCount() {
+		return this.instructionCount;
+	}
+
+	public int getBranchCount() {
+		return this.branchCount;
+	}
+
+	public int getCoveredInstructionCount() {
+		return this.coveredInstructionCount;
+	}
+
+	public int getCoveredBranchCount() {
+		return this.coveredBranchCount;
+	}
+
+	/* The coverage of a target class */
+	private static final class ClassState {
+		final ClassProbes classProbes;
+		final boolean[] coveredProbes;
+		final int[] coveredBranches; //per instruction
+
+		ClassState(ClassProbes classProbes) {
+			this.classProbes = classProbes;
+			this.coveredProbes = new boolean[classProbes.getProbeCount()];
+			this.coveredBranches = new int[classProbes.getInstructionCount()];
+		}
+	}
+}
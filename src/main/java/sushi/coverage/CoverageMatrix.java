@@ -0,0 +1,350 @@
+package sushi.coverage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import sushi.logging.Logger;
+
+/**
+ * A file with the probes covered by each test case of a test suite, i.e.,
+ * a test-by-probe matrix, written one test case at a time and read by
+ * mapping the file in memory, so that neither the writer nor the reader
+ * need to keep it in the heap. A row is the name of a test case and the
+ * nonzero words of its bitset of covered probes (see {@link TargetProbes}),
+ * each preceded by its distance from the previous nonzero word, so the
+ * runs of zero words, that are most of a bitset, take no room. The file
+ * ends with the offsets of the rows, for random access.
+ * <p>
+ * Layout (big endian): the magic number, the number of probes, the rows,
+ * the offsets of the rows, the number of rows, the offset of the offsets.
+ * A row is the UTF-8 name (varint length and bytes), the varint number of
+ * nonzero words, and for each word the varint distance and the 8 bytes.
+ */
+public final class CoverageMatrix {
+	private static final Logger logger = new Logger(CoverageMatrix.class);
+	private static final int MAGIC = 0x53434D31; //"SCM1"
+	private static final int FOOTER_SIZE = 4 + 8;
+
+	/**
+	 * Writes a {@link CoverageMatrix} file.
+	 */
+	public static final class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final int words;
+		private long position = 0L;
+		private long[] offsets = new long[1024];
+		private int rows = 0;
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param file the {@link Path} of the file; it is overwritten.
+		 * @param probes the number of probes, i.e., of columns.
+		 * @throws IOException if the file cannot be created.
+		 */
+		public Writer(Path file, int probes) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+			this.words = (probes + 63) >>> 6;
+			writeInt(MAGIC);
+			writeInt(probes);
+		}
+
+		/**
+		 * Appends a row.
+		 *
+		 * @param name the name of the test case.
+		 * @param bits the probes covered by the test case, a bitset of
+		 *        the words of {@code probes} bits.
+		 * @throws IOException if writing fails.
+		 */
+		public void add(String name, long[] bits) throws IOException {
+			if (bits.length != this.words) {
+				throw new IllegalArgumentException("The row has " + bits.length + " words instead of " + this.words);
+			}
+			if (this.rows == this.offsets.length) {
+				this.offsets = Arrays.copyOf(this.offsets, this.rows << 1);
+			}
+			this.offsets[this.rows++] = this.position;
+			final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			writeVarint(nameBytes.length);
+			this.out.write(nameBytes);
+			this.position += nameBytes.length;
+			int nonzero = 0;
+			for (long word : bits) {
+				if (word != 0) {
+					++nonzero;
+				}
+			}
+			writeVarint(nonzero);
+			int previous = -1;
+			for (int w = 0; w < bits.length; ++w) {
+				if (bits[w] != 0) {
+					writeVarint(w - previous);
+					writeLong(bits[w]);
+					previous = w;
+				}
+			}
+		}
+
+		/**
+		 * Writes the offsets of the rows and closes the file.
+		 *
+		 * @throws IOException if writing fails.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				final long indexOffset = this.position;
+				for (int i = 0; i < this.rows; ++i) {
+					writeLong(this.offsets[i]);
+				}
+				writeInt(this.rows);
+				writeLong(indexOffset);
+			} finally {
+				this.out.close();
+			}
+		}
+
+		private void writeInt(int value) throws IOException {
+			this.out.writeInt(value);
+			this.position += 4;
+		}
+
+		private void writeLong(long value) throws IOException {
+			this.out.writeLong(value);
+			this.position += 8;
+		}
+
+		private void writeVarint(int value) throws IOException {
+			int v = value;
+			while ((v & ~0x7F) != 0) {
+				this.out.writeByte((v & 0x7F) | 0x80);
+				++this.position;
+				v >>>= 7;
+			}
+			this.out.writeByte(v);
+			++this.position;
+		}
+	}
+
+	/**
+	 * Reads a {@link CoverageMatrix} file by mapping it in memory.
+	 */
+	public static final class Reader implements Closeable {
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final int probes;
+		private final int words;
+		private final int rows;
+		private final int indexOffset;
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param file the {@link Path} of the file.
+		 * @throws IOException if the file cannot be read, or is not a
+		 *         {@link CoverageMatrix}, or is larger than 2GB.
+		 */
+		public Reader(Path file) throws IOException {
+			this.channel = FileChannel.open(file, StandardOpenOption.READ);
+			try {
+				final long size = this.channel.size();
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException("Coverage matrix " + file + " is too large to be mapped");
+				}
+				if (size < 8 + FOOTER_SIZE) {
+					throw new IOException("File " + file + " is not a coverage matrix");
+				}
+				this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				if (this.buffer.getInt(0) != MAGIC) {
+					throw new IOException("File " + file + " is not a coverage matrix");
+				}
+				this.probes = this.buffer.getInt(4);
+				this.words = (this.probes + 63) >>> 6;
+				this.rows = this.buffer.getInt((int) size - FOOTER_SIZE);
+				this.indexOffset = (int) this.buffer.getLong((int) size - 8);
+			} catch (IOException | RuntimeException e) {
+				this.channel.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the number of probes, i.e., of columns.
+		 */
+		public int probes() {
+			return this.probes;
+		}
+
+		/**
+		 * @return the number of {@code long} words of the rows.
+		 */
+		public int words() {
+			return this.words;
+		}
+
+		/**
+		 * @return the number of rows, i.e., of test cases.
+		 */
+		public int rows() {
+			return this.rows;
+		}
+
+		/**
+		 * @param row a row index.
+		 * @return the name of the test case of the row.
+		 */
+		public String name(int row) {
+			final ByteBuffer b = rowBuffer(row);
+			final byte[] nameBytes = new byte[readVarint(b)];
+			b.get(nameBytes);
+			return new String(nameBytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param row a row index.
+		 * @return the probes covered by the test case of the row,
+		 *         a bitset of {@link #words()} words.
+		 */
+		public long[] row(int row) {
+			final long[] bits = new long[this.words];
+			orRow(row, bits);
+			return bits;
+		}
+
+		/**
+		 * Adds the probes covered by the test case of a row to a bitset.
+		 *
+		 * @param row a row index.
+		 * @param bits a bitset of {@link #words()} words.
+		 */
+		public void orRow(int row, long[] bits) {
+			final ByteBuffer b = rowBuffer(row);
+			final int nameLength = readVarint(b);
+			b.position(b.position() + nameLength);
+			final int nonzero = readVarint(b);
+			int w = -1;
+			for (int i = 0; i < nonzero; ++i) {
+				w += readVarint(b);
+				bits[w] |= b.getLong();
+			}
+		}
+
+		/**
+		 * Counts the probes covered by the test case of a row that are
+		 * not in a bitset, reading only the nonzero words of the row.
+		 *
+		 * @param row a row index.
+		 * @param bits a bitset of {@link #words()} words.
+		 * @return the number of the probes of the row that are not in
+		 *         {@code bits}.
+		 */
+		public int countNotIn(int row, long[] bits) {
+			final ByteBuffer b = rowBuffer(row);
+			final int nameLength = readVarint(b);
+			b.position(b.position() + nameLength);
+			final int nonzero = readVarint(b);
+			int count = 0;
+			int w = -1;
+			for (int i = 0; i < nonzero; ++i) {
+				w += readVarint(b);
+				count += Long.bitCount(b.getLong() & ~bits[w]);
+			}
+			return count;
+		}
+
+		/**
+		 * Unmaps the file and closes it. The file is unmapped at once 
+		 * rather than when the buffer is collected, so that it can be 
+		 * deleted also where a mapped file cannot (e.g., on Windows).
+		 * The {@link Reader} must not be used afterwards.
+		 * 
+		 * @throws IOException if closing fails.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				unmap(this.buffer);
+			} finally {
+				this.channel.close();
+			}
+		}
+
+		/* There is no public API to unmap a buffer: Java 9+ has
+		 * Unsafe.invokeCleaner, Java 8 the cleaner of the buffer; 
+		 * if both fail, the buffer is unmapped when collected */
+		private static void unmap(MappedByteBuffer buffer) {
+			try {
+				final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = null;
+				try {
+					invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				} catch (NoSuchMethodException e) {
+					//Java 8
+				}
+				if (invokeCleaner == null) {
+					final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+					cleanerMethod.setAccessible(true);
+					final Object cleaner = cleanerMethod.invoke(buffer);
+					if (cleaner != null) {
+						cleaner.getClass().getMethod("clean").invoke(cleaner);
+					}
+				}
+				else {
+					final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+					theUnsafe.setAccessible(true);
+					invokeCleaner.invoke(theUnsafe.get(null), buffer);
+				}
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				logger.warn("Cannot unmap the coverage matrix, it will be unmapped when collected: " + e);
+			}
+		}
+
+		private ByteBuffer rowBuffer(int row) {
+			if (this.closed) {
+				throw new IllegalStateException("Coverage matrix closed"); //the buffer is unmapped
+			}
+			if (row < 0 || row >= this.rows) {
+				throw new IndexOutOfBoundsException("Row " + row + " out of " + this.rows);
+			}
+			final ByteBuffer b = this.buffer.duplicate(); //the readers of the rows do not share the position
+			b.position((int) this.buffer.getLong(this.indexOffset + (row << 3)));
+			return b;
+		}
+
+		private static int readVarint(ByteBuffer b) {
+			int value = 0;
+			for (int shift = 0; ; shift += 7) {
+				final byte next = b.get();
+				value |= (next & 0x7F) << shift;
+				if ((next & 0x80) == 0) {
+					return value;
+				}
+			}
+		}
+	}
+
+	private CoverageMatrix() { }
+}
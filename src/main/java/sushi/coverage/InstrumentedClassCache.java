@@ -0,0 +1,179 @@
+package sushi.coverage;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.instr.Instrumenter;
+
+import sushi.logging.Logger;
+
+/**
+ * A content-addressed cache of instrumented bytecode, in memory and on
+ * disk. The instrumented bytecode of a class is stored under the SHA-256
+ * digest of its original bytecode, in a folder named after the JaCoCo
+ * version and the version of the code that accesses the execution data,
+ * so the entries never become stale and can be shared by the runs over
+ * the same subject. Every file starts with the digest of the original
+ * bytecode and the digest of the instrumented bytecode, and is used only
+ * if both match, otherwise the class is instrumented again. The folder
+ * is created accessible only by its owner, and the entries that are not
+ * used for 30 days are deleted. The cache works only
+ * for the bytecode instrumented with a {@link ClassLoaderAccessGenerator},
+ * that does not depend on the runtime. Failures of the disk are logged
+ * and then ignored.
+ */
+public final class InstrumentedClassCache {
+	private static final Logger logger = new Logger(InstrumentedClassCache.class);
+
+	/** The name of the default cache folder, in the folder of the caches of the user. */
+	public static final String DEFAULT_FOLDER_NAME = "instrumented-classes";
+
+	private static final int DIGEST_LENGTH = 32;
+
+	private final Path folder;
+	private final ConcurrentHashMap<String, byte[]> inMemory = new ConcurrentHashMap<>();
+	private Boolean folderUsable = null; //lazily checked
+
+	/**
+	 * Constructor.
+	 *
+	 * @param baseFolder the {@link Path} of the folder of the cache; it
+	 *        is created if missing.
+	 */
+	public InstrumentedClassCache(Path baseFolder) {
+		this.folder = baseFolder.resolve("jacoco-" + JaCoCo.VERSION + "-access-" + ClassLoaderAccessGenerator.VERSION);
+	}
+
+	/**
+	 * @return an {@link InstrumentedClassCache} in the folder
+	 *         {@link #DEFAULT_FOLDER_NAME} of the folder {@code .sushi}
+	 *         in the home of the user.
+	 */
+	public static InstrumentedClassCache inDefaultFolder() {
+		return new InstrumentedClassCache(CacheFolders.userFolder(DEFAULT_FOLDER_NAME));
+	}
+
+	/**
+	 * Returns the instrumented bytecode of a class, from the cache or,
+	 * if missing, from an {@link Instrumenter}.
+	 *
+	 * @param classBytes the bytecode of the class.
+	 * @param className the name of the class.
+	 * @param instrumenter an {@link Instrumenter} that uses
+	 *        {@link ClassLoaderAccessGenerator#INSTANCE}.
+	 * @return the instrumented bytecode; it must not be modified.
+	 * @throws IOException if the instrumentation fails.
+	 */
+	byte[] instrument(byte[] classBytes, String className, Instrumenter instrumenter) throws IOException {
+		final byte[] digest = sha256(classBytes);
+		final String key = hex(digest);
+		byte[] instrumented = this.inMemory.get(key);
+		if (instrumented != null) {
+			return instrumented;
+		}
+		final Path file = this.folder.resolve(key + ".class");
+		instrumented = (folderUsable() ? load(file, className, digest) : null);
+		if (instrumented == null) {
+			instrumented = instrumenter.instrument(classBytes, className);
+			if (folderUsable()) {
+				store(file, className, digest, instrumented);
+			}
+		}
+		final byte[] previous = this.inMemory.putIfAbsent(key, instrumented);
+		return (previous == null ? instrumented : previous);
+	}
+
+	/* Creates the folder and prunes it, the first time it is used */
+	private synchronized boolean folderUsable() {
+		if (this.folderUsable == null) {
+			try {
+				CacheFolders.createPrivateDirectories(this.folder);
+				CacheFolders.prune(this.folder, "*.class");
+				this.folderUsable = true;
+			} catch (IOException e) {
+				logger.warn("Cannot use the cache folder " + this.folder + ", instrumented classes will not be cached: " + e);
+				this.folderUsable = false;
+			}
+		}
+		return this.folderUsable;
+	}
+
+	/* The instrumented bytecode in a file, or null if missing or not valid */
+	private byte[] load(Path file, String className, byte[] digest) {
+		final byte[] content;
+		try {
+			content = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			logger.warn("Cannot read cached class " + className + " from " + file + ": " + e);
+			return null;
+		}
+		if (content.length < 2 * DIGEST_LENGTH ||
+				!Arrays.equals(digest, Arrays.copyOfRange(content, 0, DIGEST_LENGTH))) {
+			logger.warn("Cached class " + className + " in " + file + " is not valid, instrumenting it again");
+			return null;
+		}
+		final byte[] instrumented = Arrays.copyOfRange(content, 2 * DIGEST_LENGTH, content.length);
+		if (!Arrays.equals(sha256(instrumented), Arrays.copyOfRange(content, DIGEST_LENGTH, 2 * DIGEST_LENGTH))) {
+			logger.warn("Cached class " + className + " in " + file + " is corrupted, instrumenting it again");
+			return null;
+		}
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis())); //keeps it from pruning
+		} catch (IOException e) {
+			//not an issue, at worst the class will be instrumented again
+		}
+		return instrumented;
+	}
+
+	private void store(Path file, String className, byte[] digest, byte[] instrumented) {
+		final byte[] content = new byte[2 * DIGEST_LENGTH + instrumented.length];
+		System.arraycopy(digest, 0, content, 0, DIGEST_LENGTH);
+		System.arraycopy(sha256(instrumented), 0, content, DIGEST_LENGTH, DIGEST_LENGTH);
+		System.arraycopy(instrumented, 0, content, 2 * DIGEST_LENGTH, instrumented.length);
+
+		//writes a temporary file and moves it, so no reader sees a partial file
+		try {
+			final Path tmp = Files.createTempFile(this.folder, "tmp", ".tmp");
+			try {
+				Files.write(tmp, content);
+				try {
+					Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot cache class " + className + " in " + file + ": " + e);
+		}
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available", e); //every JVM has it
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		final StringBuilder retVal = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			retVal.append(String.format("%02x", b));
+		}
+		return retVal.toString();
+	}
+}
@@ -0,0 +1,122 @@
+package sushi.coverage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.RuntimeData;
+
+import sushi.logging.Logger;
+
+/**
+ * A class loader that loads classes from instrumented in-memory data.
+ * The instrumented classes access their execution data through their
+ * class loader (see {@link ClassLoaderAccessGenerator}), thus the
+ * instrumented bytecode does not depend on the {@link RuntimeData},
+ * and may come from an {@link InstrumentedClassCache}.
+ */
+public final class InstrumentingClassLoader extends ClassLoader {
+	private static final Logger logger = new Logger(InstrumentingClassLoader.class);
+
+	private final RuntimeData coveData;
+	private final InstrumentedClassCache cache;
+	private final Instrumenter instr;
+	private final Collection<String> doNotInstrument_packageSubstrings;
+	private final Map<String, Class<?>> instrumentedClasses;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parent the parent {@link ClassLoader}, where the classes
+	 *        are looked up.
+	 * @param coveData the {@link RuntimeData} that collects the
+	 *        execution data of the instrumented classes.
+	 * @param cache the {@link InstrumentedClassCache} of the instrumented
+	 *        bytecode, or {@code null} for instrumenting every class.
+	 */
+	public InstrumentingClassLoader(ClassLoader parent, RuntimeData coveData, InstrumentedClassCache cache) {
+		super(parent);
+
+		this.coveData = coveData;
+		this.cache = cache;
+		this.instr = new Instrumenter(ClassLoaderAccessGenerator.INSTANCE);
+
+		this.doNotInstrument_packageSubstrings = new HashSet<String>();
+		this.doNotInstrument_packageSubstrings.add("java.");
+		this.doNotInstrument_packageSubstrings.add("sun.");
+		this.doNotInstrument_packageSubstrings.add("jacoco.");
+		this.doNotInstrument_packageSubstrings.add("jbse.meta.");
+
+		this.instrumentedClasses = new HashMap<String, Class<?>>();
+	}
+
+	private boolean jumpInstrument(String className) {
+		if (className == null)
+			return true;
+		if(className.indexOf('.') == -1)
+			return false;
+		for (String packageSubstring : this.doNotInstrument_packageSubstrings) {
+			if (className.contains(packageSubstring))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+		logger.debug("Loading class " + name);
+		try {
+			if (!jumpInstrument(name)) {
+				//the tests that time out may still load classes
+				synchronized (getClassLoadingLock(name)) {
+					Class<?> clazz = this.instrumentedClasses.get(name);
+
+					// The class is already instrumented, just return it
+					if (clazz != null) {
+						logger.debug(" ***already there");
+						return clazz;
+					}
+
+					// Do instrumentation and return
+					final byte[] classBytes = ClassFiles.read(name);
+					if (classBytes != null) {
+						final byte[] instrumented = (this.cache == null ?
+								this.instr.instrument(classBytes, name) :
+								this.cache.instrument(classBytes, name, this.instr));
+						clazz = defineClass(name, instrumented, 0, instrumented.length);
+						this.instrumentedClasses.put(name, clazz);
+						logger.debug("Loaded and instrumented " + name);
+						return clazz;
+					}
+				}
+			}
+		} catch (Throwable e) {
+			logger.error("Error while loading instrumented class " + name, e);
+		}
+
+		// The class must not or cannot be instrumented, delegate loading to system class loader
+		logger.debug("Delegating (not instrumenting) " + name);
+		return super.loadClass(name, resolve);
+	}
+
+	/**
+	 * The access of the instrumented classes to their execution data
+	 * (see {@link ClassLoaderAccessGenerator}); otherwise, as
+	 * {@link Object#equals(Object)}.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof Object[]) {
+			this.coveData.getProbes((Object[]) obj);
+			return false;
+		}
+		return super.equals(obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode();
+	}
+}
@@ -0,0 +1,406 @@
+package sushi.coverage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.runtime.RuntimeData;
+
+import sushi.logging.Logger;
+
+/**
+ * Executes the test methods of some test suites and collects the
+ * execution data of each of them. The test methods are split round
+ * robin among some workers that run in parallel, each with its own
+ * JaCoCo runtime data and instrumenting class loader, so the execution data
+ * and the static state of the classes of a worker are not shared with
+ * the other workers. Each test method runs under a {@link TestWatchdog}
+ * with the timeout of the {@link TestBudget}, shortened to what is left
+ * of the global timeout; a worker whose test method times out is replaced
+ * by a fresh one, since the state of its classes may be inconsistent.
+ * The test methods that are not started before the global timeout are
+ * not executed.
+ * After each test method the executed probes are copied out of the
+ * runtime data of its worker, optionally only for some target classes.
+ */
+public final class ParallelTestExecutor {
+	private static final Logger logger = new Logger(ParallelTestExecutor.class);
+
+	private final int workers;
+	private final TestBudget budget;
+	private final InstrumentedClassCache cache;
+	private final HashSet<String> coverageTargets;
+	private volatile List<Method> timedOutTestMethods = Collections.emptyList();
+	private volatile List<Method> unexecutedTestMethods = Collections.emptyList();
+	private volatile Map<Method, Long> testDurationsNanos = Collections.emptyMap();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param workers a positive {@code int}, the number of workers.
+	 * @param budget the {@link TestBudget} of the execution.
+	 * @param cache the {@link InstrumentedClassCache} shared by the workers,
+	 *        or {@code null} for instrumenting the classes in every worker.
+	 */
+	public ParallelTestExecutor(int workers, TestBudget budget, InstrumentedClassCache cache) {
+		this(workers, budget, cache, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param workers a positive {@code int}, the number of workers.
+	 * @param budget the {@link TestBudget} of the execution.
+	 * @param cache the {@link InstrumentedClassCache} shared by the workers,
+	 *        or {@code null} for instrumenting the classes in every worker.
+	 * @param coverageTargetClassNames the names of the classes whose
+	 *        execution data are collected, or {@code null} for all the
+	 *        classes.
+	 */
+	public ParallelTestExecutor(int workers, TestBudget budget, InstrumentedClassCache cache, Collection<String> coverageTargetClassNames) {
+		if (workers <= 0) {
+			throw new IllegalArgumentException("The number of workers must be positive");
+		}
+		this.workers = workers;
+		this.budget = budget;
+		this.cache = cache;
+		if (coverageTargetClassNames == null) {
+			this.coverageTargets = null;
+		} else {
+			this.coverageTargets = new HashSet<>();
+			for (String className : coverageTargetClassNames) {
+				this.coverageTargets.add(className.replace('.', '/')); //as named by the execution data
+			}
+		}
+	}
+
+	/**
+	 * Consumes the execution data of the test methods.
+	 */
+	@FunctionalInterface
+	public interface ExecutionDataConsumer {
+		/**
+		 * Consumes the execution data of a test method.
+		 *
+		 * @param testMethod the test {@link Method}, as loaded by the
+		 *        class loader of {@link ParallelTestExecutor}.
+		 * @param executionDataStore its {@link ExecutionDataStore}.
+		 * @throws Exception if consuming fails; then the execution stops.
+		 */
+		void accept(Method testMethod, ExecutionDataStore executionDataStore) throws Exception;
+	}
+
+	/**
+	 * Executes the test methods.
+	 *
+	 * @param testSuiteClassNames the names of the classes of the test suites.
+	 * @param isTestMethod a {@link Predicate} that selects the test methods
+	 *        among the methods declared by the classes of the test suites.
+	 * @return a map from the test methods to their execution data, in the
+	 *         order of the test suites and of their declared methods; the
+	 *         methods belong to the classes as loaded by the class loader
+	 *         of this class, i.e., not instrumented.
+	 * @throws Exception if some class cannot be loaded or instantiated,
+	 *         or some test method cannot be invoked; the exceptions thrown
+	 *         by the test methods are ignored.
+	 */
+	public LinkedHashMap<Method, ExecutionDataStore> execute(String[] testSuiteClassNames, Predicate<Method> isTestMethod)
+	throws Exception {
+		final LinkedHashMap<Method, ExecutionDataStore> retVal = new LinkedHashMap<>();
+		execute(testSuiteClassNames, isTestMethod, retVal::put);
+		return retVal;
+	}
+
+	/**
+	 * Executes the test methods, and streams their execution data to
+	 * a consumer as soon as they and all the preceding ones complete,
+	 * so the execution data need not be retained.
+	 *
+	 * @param testSuiteClassNames the names of the classes of the test suites.
+	 * @param isTestMethod a {@link Predicate} that selects the test methods
+	 *        among the methods declared by the classes of the test suites.
+	 * @param consumer the {@link ExecutionDataConsumer} of the execution
+	 *        data; it is invoked by one thread at a time, in the order of
+	 *        the test suites and of their declared methods, and not for
+	 *        the test methods that are not executed.
+	 * @throws Exception if some class cannot be loaded or instantiated,
+	 *         or some test method cannot be invoked, or the consumer fails;
+	 *         the exceptions thrown by the test methods are ignored.
+	 */
+	public void execute(String[] testSuiteClassNames, Predicate<Method> isTestMethod, ExecutionDataConsumer consumer)
+	throws Exception {
+		final List<Method> testMethods = new ArrayList<>();
+		for (String testSuiteClassName : testSuiteClassNames) {
+			final Class<?> testSuiteClass = Class.forName(testSuiteClassName, false, ParallelTestExecutor.class.getClassLoader());
+			for (Method testMethod : testSuiteClass.getDeclaredMethods()) {
+				logger.debug("Analyzing method " + testMethod.getName());
+				if (isTestMethod.test(testMethod)) {
+					testMethods.add(testMethod);
+				}
+				else {
+					logger.debug("Skipping method " + testMethod.getName());
+				}
+			}
+		}
+
+		final long deadline = (this.budget.getGlobalTimeoutMillis() > 0 ? 
+				System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.budget.getGlobalTimeoutMillis()) : 0L);
+		final boolean[] timedOut = new boolean[testMethods.size()];
+		final long[] durationsNanos = new long[testMethods.size()];
+		final InOrderDelivery delivery = new InOrderDelivery(testMethods, consumer);
+		final int partitions = Math.min(this.workers, Math.max(1, testMethods.size()));
+		final ExecutorService pool = Executors.newFixedThreadPool(partitions, ParallelTestExecutor::daemonThread);
+		try {
+			final List<Future<Void>> futures = new ArrayList<>();
+			for (int p = 0; p < partitions; ++p) {
+				final int partition = p;
+				futures.add(pool.submit(() -> {
+					executePartition(testMethods, partition, partitions, deadline, timedOut, durationsNanos, delivery);
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					throw (cause instanceof Exception ? (Exception) cause : e);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			final List<Method> timedOutTestMethods = new ArrayList<>();
+			final List<Method> unexecutedTestMethods = new ArrayList<>();
+			final Map<Method, Long> testDurationsNanos = new LinkedHashMap<>();
+			for (int i = 0; i < testMethods.size(); ++i) {
+				if (!delivery.isSkipped(i)) {
+					testDurationsNanos.put(testMethods.get(i), durationsNanos[i]);
+				}
+				if (timedOut[i]) {
+					timedOutTestMethods.add(testMethods.get(i));
+				} else if (delivery.isSkipped(i)) {
+					unexecutedTestMethods.add(testMethods.get(i));
+				}
+			}
+			this.timedOutTestMethods = Collections.unmodifiableList(timedOutTestMethods);
+			this.unexecutedTestMethods = Collections.unmodifiableList(unexecutedTestMethods);
+			this.testDurationsNanos = Collections.unmodifiableMap(testDurationsNanos);
+		}
+	}
+
+	/**
+	 * @return the test methods that timed out in the last execution, 
+	 *         in the order of execution; their execution data are 
+	 *         collected nonetheless.
+	 */
+	public List<Method> getTimedOutTestMethods() {
+		return this.timedOutTestMethods;
+	}
+
+	/**
+	 * @return the test methods that were not executed in the last 
+	 *         execution because the global timeout expired, in the 
+	 *         order of execution.
+	 */
+	public List<Method> getUnexecutedTestMethods() {
+		return this.unexecutedTestMethods;
+	}
+
+	/**
+	 * @return the wall clock durations, in nanoseconds, of the test
+	 *         methods executed in the last execution, in the order of
+	 *         execution; the duration of a test method includes the
+	 *         instantiation of its test suite class.
+	 */
+	public Map<Method, Long> getTestDurationsNanos() {
+		return this.testDurationsNanos;
+	}
+
+	private void executePartition(List<Method> testMethods, int partition, int partitions, long deadline, boolean[] timedOut, 
+			long[] durationsNanos, InOrderDelivery delivery)
+	throws Exception {
+		Worker worker = new Worker();
+		try {
+			for (int i = partition; i < testMethods.size(); i += partitions) {
+				final Method testMethod = testMethods.get(i);
+				long timeoutMillis = this.budget.getTestTimeoutMillis();
+				if (deadline != 0L) {
+					final long leftMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (leftMillis <= 0) {
+						logger.debug("Global timeout expired, not executing test case " + testMethod);
+						delivery.skip(i);
+						continue;
+					}
+					timeoutMillis = (timeoutMillis > 0 ? Math.min(timeoutMillis, leftMillis) : leftMillis);
+				}
+				logger.debug("Executing test case " + testMethod);
+				final long start = System.nanoTime();
+				final TestWatchdog.Outcome outcome = worker.invoke(testMethod, timeoutMillis);
+				durationsNanos[i] = System.nanoTime() - start;
+
+				// At the end of test execution we collect execution data
+				// NB: We reset the execution data (for the next test method)
+				delivery.deliver(i, worker.collectExecutionDataAndReset());
+				if (outcome.timedOut()) {
+					timedOut[i] = true;
+					logger.warn("Test case " + testMethod + " timed out after " + timeoutMillis + " ms (" + outcome + "), replacing its worker");
+					worker.dispose();
+					worker = new Worker();
+				}
+			}
+		} finally {
+			worker.dispose();
+		}
+	}
+
+	/* Hands the execution data to the consumer in the order of the test methods,
+	 * holding the ones that complete before some preceding one */
+	private static final class InOrderDelivery {
+		private final List<Method> testMethods;
+		private final ExecutionDataConsumer consumer;
+		private final ExecutionDataStore[] pending;
+		private final boolean[] done;
+		private final boolean[] skipped;
+		private int next = 0;
+
+		InOrderDelivery(List<Method> testMethods, ExecutionDataConsumer consumer) {
+			this.testMethods = testMethods;
+			this.consumer = consumer;
+			this.pending = new ExecutionDataStore[testMethods.size()];
+			this.done = new boolean[testMethods.size()];
+			this.skipped = new boolean[testMethods.size()];
+		}
+
+		synchronized void deliver(int index, ExecutionDataStore executionDataStore) throws Exception {
+			this.pending[index] = executionDataStore;
+			this.done[index] = true;
+			flush();
+		}
+
+		synchronized void skip(int index) throws Exception {
+			this.skipped[index] = true;
+			this.done[index] = true;
+			flush();
+		}
+
+		synchronized boolean isSkipped(int index) {
+			return this.skipped[index];
+		}
+
+		private void flush() throws Exception {
+			while (this.next < this.done.length && this.done[this.next]) {
+				final ExecutionDataStore toDeliver = this.pending[this.next];
+				this.pending[this.next] = null;
+				if (toDeliver != null) {
+					this.consumer.accept(this.testMethods.get(this.next), toDeliver);
+				}
+				++this.next;
+			}
+		}
+	}
+
+	private static Thread daemonThread(Runnable r) {
+		final Thread t = new Thread(r);
+		t.setDaemon(true);
+		return t;
+	}
+
+	/* The runtime data and a class loader, and the watchdog that runs the test methods */
+	private final class Worker {
+		private final RuntimeData data = new RuntimeData();
+		private final InstrumentingClassLoader instrumentingClassLoader =
+				new InstrumentingClassLoader(ParallelTestExecutor.class.getClassLoader(), this.data, ParallelTestExecutor.this.cache);
+		private final TestWatchdog watchdog = new TestWatchdog(ParallelTestExecutor.this.budget.getStopGraceMillis());
+
+		TestWatchdog.Outcome invoke(Method testMethod, long timeoutMillis) throws Exception {
+			// The test suite class is also initialized and instantiated 
+			// under the watchdog, since its initializers may not terminate
+			final Callable<Object> task = () -> {
+				final Class<?> testSuiteClass = Class.forName(testMethod.getDeclaringClass().getName(), true, this.instrumentingClassLoader);
+				final Method method = resolve(testSuiteClass, testMethod);
+				final Object instance = testSuiteClass.newInstance();
+				return method.invoke(instance, new Object[method.getParameterTypes().length]);
+			};
+			try {
+				return this.watchdog.run(task, timeoutMillis);
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof InvocationTargetException) {
+					// We must ignore the exceptions thrown during the execution of testMethod
+					return TestWatchdog.Outcome.COMPLETED;
+				} else if (cause instanceof Exception) {
+					throw (Exception) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				} else {
+					throw e; //this should not happen
+				}
+			}
+		}
+
+		ExecutionDataStore collectExecutionDataAndReset() {
+			// We copy the probes of the (target) classes that were executed,
+			// since resetting the runtime data clears them
+			final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+			this.data.collect(executionData -> {
+				if (isCollected(executionData)) {
+					executionDataStore.put(new ExecutionData(executionData.getId(), executionData.getName(), executionData.getProbes().clone()));
+				}
+			}, sessionInfo -> { }, /*reset data:*/true);
+			return executionDataStore;
+		}
+
+		private boolean isCollected(ExecutionData executionData) {
+			final Set<String> coverageTargets = ParallelTestExecutor.this.coverageTargets;
+			if (coverageTargets != null && !coverageTargets.contains(executionData.getName())) {
+				return false;
+			}
+			for (boolean probe : executionData.getProbes()) {
+				if (probe) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void dispose() {
+			this.watchdog.dispose();
+		}
+
+		/* The method of the instrumented class that corresponds to a method of the not instrumented one */
+		private Method resolve(Class<?> testSuiteClass, Method testMethod) throws NoSuchMethodException {
+			final String[] parameterTypes = typeNames(testMethod.getParameterTypes());
+			for (Method method : testSuiteClass.getDeclaredMethods()) {
+				if (method.getName().equals(testMethod.getName()) && Arrays.equals(typeNames(method.getParameterTypes()), parameterTypes)) {
+					return method;
+				}
+			}
+			throw new NoSuchMethodException(testMethod.toString());
+		}
+
+		private String[] typeNames(Class<?>[] types) {
+			final String[] retVal = new String[types.length];
+			for (int i = 0; i < types.length; ++i) {
+				retVal[i] = types[i].getName();
+			}
+			return retVal;
+		}
+	}
+}
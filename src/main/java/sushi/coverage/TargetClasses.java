@@ -0,0 +1,181 @@
+package sushi.coverage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Reads the bytecode of the coverage target classes and of the member
+ * classes they declare, the same classes that {@link Class#getDeclaredClasses()}
+ * returns, but without loading the classes. The class files of the member
+ * classes of a target are found by listing the {@code Outer$*.class}
+ * entries next to the class file of the target, in its directory or in
+ * its jar (through a NIO {@link FileSystem}), and are selected by the
+ * inner class attributes of the target. The targets are scanned in
+ * parallel.
+ */
+public final class TargetClasses {
+	/**
+	 * Reads the target classes.
+	 *
+	 * @param classNames the binary names of the target classes.
+	 * @return a map from the binary names of the target classes and of
+	 *         their member classes to their bytecode, with the targets in
+	 *         the order of {@code classNames}, each followed by its
+	 *         member classes, sorted by name.
+	 * @throws ClassNotFoundException if some target class is not in
+	 *         the classpath.
+	 * @throws IOException if reading fails.
+	 */
+	public static Map<String, byte[]> read(String[] classNames) throws ClassNotFoundException, IOException {
+		final ConcurrentHashMap<Path, FileSystem> jars = new ConcurrentHashMap<>();
+		try {
+			final List<Map<String, byte[]>> scanned;
+			try {
+				scanned = Arrays.stream(classNames).parallel().map(className -> {
+					try {
+						return scan(className, jars);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}).collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+			} catch (UncheckedIOException e) {
+				final IOException cause = e.getCause();
+				if (cause instanceof MissingClassException) {
+					throw new ClassNotFoundException(cause.getMessage());
+				}
+				throw cause;
+			}
+			final Map<String, byte[]> retVal = new LinkedHashMap<>();
+			for (Map<String, byte[]> classes : scanned) {
+				retVal.putAll(classes);
+			}
+			return retVal;
+		} finally {
+			for (FileSystem jar : jars.values()) {
+				jar.close();
+			}
+		}
+	}
+
+	private static Map<String, byte[]> scan(String className, ConcurrentHashMap<Path, FileSystem> jars) throws IOException {
+		final URL url = ClassFiles.class.getResource('/' + className.replace('.', '/') + ".class");
+		if (url == null) {
+			throw new MissingClassException(className);
+		}
+		final Path classFile = classFile(url, jars);
+		final Map<String, byte[]> retVal = new LinkedHashMap<>();
+		final byte[] classBytes = (classFile == null ? ClassFiles.read(className) : Files.readAllBytes(classFile));
+		retVal.put(className, classBytes); //consider the outer class...
+		final Set<String> memberClasses = memberClasses(classBytes);
+		if (memberClasses.isEmpty()) {
+			return retVal;
+		}
+		//...and the related inner classes
+		final String packagePrefix = className.substring(0, className.lastIndexOf('.') + 1);
+		final List<String> innerNames = new ArrayList<>();
+		if (classFile == null) {
+			//not indexable, looks them up one by one
+			innerNames.addAll(memberClasses);
+		} else {
+			final String simpleName = classFile.getFileName().toString().replace(".class", "");
+			try (final DirectoryStream<Path> entries = Files.newDirectoryStream(classFile.getParent(), simpleName + "$*.class")) {
+				for (Path entry : entries) {
+					final String fileName = entry.getFileName().toString();
+					final String innerName = packagePrefix + fileName.substring(0, fileName.length() - ".class".length());
+					if (memberClasses.contains(innerName)) {
+						innerNames.add(innerName);
+					}
+				}
+			}
+		}
+		innerNames.sort(null);
+		for (String innerName : innerNames) {
+			final byte[] innerBytes = (classFile == null ?
+					ClassFiles.read(innerName) :
+					Files.readAllBytes(classFile.resolveSibling(innerName.substring(packagePrefix.length()) + ".class")));
+			if (innerBytes != null) {
+				retVal.put(innerName, innerBytes);
+			}
+		}
+		return retVal;
+	}
+
+	/* The Path of a class file in a directory or in a jar, or null if it is elsewhere */
+	private static Path classFile(URL url, ConcurrentHashMap<Path, FileSystem> jars) throws IOException {
+		try {
+			if ("file".equals(url.getProtocol())) {
+				return Paths.get(url.toURI());
+			}
+			if ("jar".equals(url.getProtocol())) {
+				final String spec = url.getPath(); //file:/path/to.jar!/package/Class.class
+				final int separator = spec.indexOf("!/");
+				if (separator < 0 || !spec.startsWith("file:")) {
+					return null;
+				}
+				final Path jarPath = Paths.get(new URI(spec.substring(0, separator)));
+				FileSystem jar = jars.get(jarPath);
+				if (jar == null) {
+					synchronized (jars) {
+						jar = jars.get(jarPath);
+						if (jar == null) {
+							jar = FileSystems.newFileSystem(jarPath, (ClassLoader) null);
+							jars.put(jarPath, jar);
+						}
+					}
+				}
+				return jar.getPath(spec.substring(separator + 1));
+			}
+		} catch (URISyntaxException e) {
+			//falls back to the class loader
+		}
+		return null;
+	}
+
+	/* The binary names of the member classes declared by a class */
+	private static Set<String> memberClasses(byte[] classBytes) {
+		final Set<String> retVal = new HashSet<>();
+		final ClassReader reader = new ClassReader(classBytes);
+		final String internalName = reader.getClassName();
+		reader.accept(new ClassVisitor(Opcodes.ASM5) {
+			@Override
+			public void visitInnerClass(String name, String outerName, String innerName, int access) {
+				if (internalName.equals(outerName)) {
+					retVal.add(name.replace('/', '.'));
+				}
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return retVal;
+	}
+
+	/* A target class that is not in the classpath */
+	private static final class MissingClassException extends IOException {
+		private static final long serialVersionUID = -3215802497216104437L;
+
+		MissingClassException(String className) {
+			super(className);
+		}
+	}
+
+	private TargetClasses() { }
+}
@@ -0,0 +1,162 @@
+package sushi.coverage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+/**
+ * The probes of a set of target classes, numbered consecutively
+ * class after class, so that the probes that a test case covers
+ * can be represented as a bitset of {@code long} words.
+ */
+public final class TargetProbes {
+	private final List<ClassProbes> classes = new ArrayList<>();
+	private final int[] offsets;
+	private final int size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param targetClassBytes the bytecodes of the target classes, not
+	 *        instrumented; the classes with the same name are considered
+	 *        once, as JaCoCo does.
+	 * @throws IllegalStateException if two different classes have the
+	 *         same name.
+	 */
+	public TargetProbes(Iterable<byte[]> targetClassBytes) {
+		final HashMap<String, Long> analyzed = new HashMap<>();
+		for (byte[] classBytes : targetClassBytes) {
+			final ClassProbes classProbes = ClassProbes.analyze(classBytes);
+			final Long id = analyzed.get(classProbes.getName());
+			if (id != null) {
+				if (id.longValue() != classProbes.getId()) {
+					throw new IllegalStateException("Can't add different class with same name: " + classProbes.getName());
+				}
+				continue;
+			}
+			analyzed.put(classProbes.getName(), classProbes.getId());
+			this.classes.add(classProbes);
+		}
+		this.offsets = new int[this.classes.size()];
+		int size = 0;
+		for (int i = 0; i < this.classes.size(); ++i) {
+			this.offsets[i] = size;
+			size += this.classes.get(i).getProbeCount();
+		}
+		this.size = size;
+	}
+
+	/**
+	 * @return the {@link ClassProbes} of the target classes, in the
+	 *         order of the numbering of their probes.
+	 */
+	public List<ClassProbes> getClasses() {
+		return Collections.unmodifiableList(this.classes);
+	}
+
+	/**
+	 * @return the total number of probes of the target classes.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of {@code long} words of the bitsets
+	 *         returned by {@link #coveredBy(ExecutionDataStore)}.
+	 */
+	public int words() {
+		return (this.size + 63) >>> 6;
+	}
+
+	/**
+	 * Returns the probes of the target classes covered by some
+	 * execution data.
+	 *
+	 * @param executionDataStore an {@link ExecutionDataStore}; the data
+	 *        of the classes that are not targets are ignored.
+	 * @return a bitset of {@link #words()} words.
+	 * @throws IllegalStateException if the data of a target class has
+	 *         a wrong number of probes.
+	 */
+	public long[] coveredBy(ExecutionDataStore executionDataStore) {
+		final long[] bits = new long[words()];
+		for (int i = 0; i < this.classes.size(); ++i) {
+			final boolean[] probes = probesOf(this.classes.get(i), executionDataStore);
+			if (probes == null) {
+				continue;
+			}
+			final int offset = this.offsets[i];
+			for (int probe = 0; probe < probes.length; ++probe) {
+				if (probes[probe]) {
+					final int bit = offset + probe;
+					bits[bit >>> 6] |= (1L << bit);
+				}
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Converts a bitset of covered probes back to execution data.
+	 *
+	 * @param bits a bitset of {@link #words()} words, as returned by
+	 *        {@link #coveredBy(ExecutionDataStore)}.
+	 * @return an {@link ExecutionDataStore} with the data of the
+	 *         target classes that have some probe in {@code bits}.
+	 */
+	public ExecutionDataStore executionDataOf(long[] bits) {
+		final ExecutionDataStore retVal = new ExecutionDataStore();
+		for (int i = 0; i < this.classes.size(); ++i) {
+			final ClassProbes classProbes = this.classes.get(i);
+			final boolean[] probes = new boolean[classProbes.getProbeCount()];
+			boolean some = false;
+			for (int probe = 0; probe < probes.length; ++probe) {
+				probes[probe] = isSet(bits, this.offsets[i] + probe);
+				some |= probes[probe];
+			}
+			if (some) {
+				retVal.put(new ExecutionData(classProbes.getId(), classProbes.getName(), probes));
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * @param classIndex the index of a class in {@link #getClasses()}.
+	 * @return the number of its first probe.
+	 */
+	int offset(int classIndex) {
+		return this.offsets[classIndex];
+	}
+
+	static boolean isSet(long[] bits, int bit) {
+		return (bits[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * Returns the probes of a target class in some execution data.
+	 *
+	 * @param classProbes the {@link ClassProbes} of a target class.
+	 * @param executionDataStore an {@link ExecutionDataStore}.
+	 * @return the probes of the class, or {@code null} if
+	 *         {@code executionDataStore} has no data for it.
+	 * @throws IllegalStateException if the data of the class has
+	 *         a wrong number of probes.
+	 */
+	static boolean[] probesOf(ClassProbes classProbes, ExecutionDataStore executionDataStore) {
+		final ExecutionData data = executionDataStore.get(classProbes.getId());
+		if (data == null) {
+			return null;
+		}
+		if (data.getProbes().length != classProbes.getProbeCount()) {
+			throw new IllegalStateException("Incompatible execution data for class " + classProbes.getName() +
+			" with id " + Long.toHexString(classProbes.getId()));
+		}
+		return data.getProbes();
+	}
+}
@@ -0,0 +1,68 @@
+package sushi.coverage;
+
+/**
+ * The time budgets of the execution of a test suite: a timeout for
+ * each test method, a timeout for the whole suite, and the grace
+ * time given to a timed out test method to react to each step of
+ * the stop escalation (see {@link TestWatchdog}).
+ */
+public final class TestBudget {
+	/** The default grace time, in milliseconds. */
+	public static final long DEFAULT_STOP_GRACE_MILLIS = 1_000L;
+
+	/** No timeouts. */
+	public static final TestBudget UNLIMITED = new TestBudget(0L, 0L);
+
+	private final long testTimeoutMillis;
+	private final long globalTimeoutMillis;
+	private final long stopGraceMillis;
+
+	/**
+	 * Constructor, with the default grace time.
+	 *
+	 * @param testTimeoutMillis the timeout of each test method in
+	 *        milliseconds, or a nonpositive {@code long} for no timeout.
+	 * @param globalTimeoutMillis the timeout of the whole test suite in
+	 *        milliseconds, or a nonpositive {@code long} for no timeout.
+	 */
+	public TestBudget(long testTimeoutMillis, long globalTimeoutMillis) {
+		this(testTimeoutMillis, globalTimeoutMillis, DEFAULT_STOP_GRACE_MILLIS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param testTimeoutMillis the timeout of each test method in
+	 *        milliseconds, or a nonpositive {@code long} for no timeout.
+	 * @param globalTimeoutMillis the timeout of the whole test suite in
+	 *        milliseconds, or a nonpositive {@code long} for no timeout.
+	 * @param stopGraceMillis a positive {@code long}, the grace time
+	 *        in milliseconds.
+	 */
+	public TestBudget(long testTimeoutMillis, long globalTimeoutMillis, long stopGraceMillis) {
+		if (stopGraceMillis <= 0) {
+			throw new IllegalArgumentException("The grace time must be positive");
+		}
+		this.testTimeoutMillis = testTimeoutMillis;
+		this.globalTimeoutMillis = globalTimeoutMillis;
+		this.stopGraceMillis = stopGraceMillis;
+	}
+
+	public long getTestTimeoutMillis() {
+		return this.testTimeoutMillis;
+	}
+
+	public long getGlobalTimeoutMillis() {
+		return this.globalTimeoutMillis;
+	}
+
+	public long getStopGraceMillis() {
+		return this.stopGraceMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "test timeout " + (this.testTimeoutMillis > 0 ? this.testTimeoutMillis + " ms" : "none") +
+		", global timeout " + (this.globalTimeoutMillis > 0 ? this.globalTimeoutMillis + " ms" : "none");
+	}
+}
@@ -0,0 +1,38 @@
+package sushi.coverage;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+/**
+ * Which methods of a test suite are test methods: the ones with a 
+ * runtime annotation whose name contains {@code Test}, e.g., 
+ * {@code org.junit.Test}. The same check is done on loaded methods, 
+ * by the coverage tools, and on class files, by the 
+ * {@link TestSuiteScanner}.
+ */
+public final class TestMethods {
+	/**
+	 * @param method a {@link Method}.
+	 * @return {@code true} iff {@code method} is a test method.
+	 */
+	public static boolean isTestMethod(Method method) {
+		for (Annotation annotation : method.getAnnotations()) {
+			if (isTestAnnotation(annotation.annotationType().getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param annotationName the binary name, or the internal name, or 
+	 *        the descriptor of the type of a runtime annotation.
+	 * @return {@code true} iff a method with the annotation is a test 
+	 *         method.
+	 */
+	static boolean isTestAnnotation(String annotationName) {
+		return annotationName.contains("Test");
+	}
+
+	private TestMethods() { }
+}
@@ -0,0 +1,338 @@
+package sushi.coverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import sushi.logging.Logger;
+
+/**
+ * Finds the test suites in the packages of a classpath, by scanning the
+ * compiled classes in its directories and jars, in parallel, without
+ * loading them. A test suite is a concrete top-level class that declares
+ * a test method, as {@link TestMethods} selects them for the coverage 
+ * tools. The results are cached in a file, for each class file in a 
+ * directory and for each jar, and reused while the modification time of 
+ * the class file or of the jar does not change. The default cache file 
+ * is private to the user and to the classpath; the entries of the files 
+ * that no longer exist are dropped, and the cache files of the classpaths
+ * that are not scanned for 30 days are deleted.
+ */
+public final class TestSuiteScanner {
+	private static final Logger logger = new Logger(TestSuiteScanner.class);
+
+	/** The name of the default cache folder, in the folder of the caches of the user. */
+	public static final String DEFAULT_FOLDER_NAME = "test-suites";
+
+	private final List<Path> classpath;
+	private final Path cacheFile;
+	private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+	private volatile boolean cacheChanged = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param classpath the directories and jars to scan.
+	 * @param cacheFile the {@link Path} of the cache file, or {@code null}
+	 *        for no cache.
+	 */
+	public TestSuiteScanner(List<Path> classpath, Path cacheFile) {
+		this.classpath = new ArrayList<>(classpath);
+		this.cacheFile = cacheFile;
+		loadCache();
+	}
+
+	/**
+	 * @return a {@link TestSuiteScanner} of the classpath of the JVM,
+	 *         with a cache file named after the digest of the classpath 
+	 *         in the folder {@link #DEFAULT_FOLDER_NAME} of the folder
+	 *         {@code .sushi} in the home of the user.
+	 */
+	public static TestSuiteScanner ofJavaClassPath() {
+		final List<Path> classpath = new ArrayList<>();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (!entry.isEmpty()) {
+				classpath.add(Paths.get(entry).toAbsolutePath());
+			}
+		}
+		final String cacheFileName = String.format("%016x", digest(classpath.toString())) + ".properties";
+		return new TestSuiteScanner(classpath, CacheFolders.userFolder(DEFAULT_FOLDER_NAME).resolve(cacheFileName));
+	}
+
+	private static long digest(String s) {
+		try {
+			return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8))).getLong();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available", e); //every JVM has it
+		}
+	}
+
+	/**
+	 * Expands the wildcards in the names of some test suites:
+	 * {@code pkg.*} stands for the test suites in the package
+	 * {@code pkg}, and {@code pkg.**} for the ones in {@code pkg}
+	 * and in its subpackages.
+	 *
+	 * @param testSuiteClassNames the names of the test suites, possibly
+	 *        with wildcards.
+	 * @return the names of the test suites, with the ones of each
+	 *         wildcard sorted.
+	 * @throws IOException if scanning fails.
+	 */
+	public String[] expand(String[] testSuiteClassNames) throws IOException {
+		final List<String> retVal = new ArrayList<>();
+		for (String testSuiteClassName : testSuiteClassNames) {
+			if (testSuiteClassName.endsWith(".**")) {
+				retVal.addAll(testSuitesIn(testSuiteClassName.substring(0, testSuiteClassName.length() - 3), true));
+			} else if (testSuiteClassName.endsWith(".*")) {
+				retVal.addAll(testSuitesIn(testSuiteClassName.substring(0, testSuiteClassName.length() - 2), false));
+			} else {
+				retVal.add(testSuiteClassName);
+			}
+		}
+		saveCache();
+		return retVal.toArray(new String[retVal.size()]);
+	}
+
+	/**
+	 * Finds the test suites in a package.
+	 *
+	 * @param packageName the name of a package.
+	 * @param subpackages {@code true} iff also the test suites in
+	 *        the subpackages must be found.
+	 * @return the sorted names of the test suites.
+	 * @throws IOException if scanning fails.
+	 */
+	public List<String> testSuitesIn(String packageName, boolean subpackages) throws IOException {
+		final String packagePath = packageName.replace('.', '/');
+		final TreeSet<String> retVal = new TreeSet<>();
+		for (Path entry : this.classpath) {
+			if (Files.isDirectory(entry)) {
+				final Path packageFolder = entry.resolve(packagePath);
+				if (Files.isDirectory(packageFolder)) {
+					retVal.addAll(scanFolder(entry, packageFolder, subpackages));
+				}
+			} else if (Files.isRegularFile(entry)) {
+				for (String className : scanJar(entry)) {
+					if (inPackage(className, packageName, subpackages)) {
+						retVal.add(className);
+					}
+				}
+			}
+		}
+		if (retVal.isEmpty()) {
+			logger.warn("No test suites found in package " + packageName);
+		}
+		return new ArrayList<>(retVal);
+	}
+
+	private List<String> scanFolder(Path root, Path packageFolder, boolean subpackages) throws IOException {
+		try (final Stream<Path> files = Files.walk(packageFolder, subpackages ? Integer.MAX_VALUE : 1)) {
+			return files.parallel().filter(TestSuiteScanner::isTopLevelClassFile).filter(file -> {
+				try {
+					final String key = file.toString();
+					final String stamp = Long.toString(Files.getLastModifiedTime(file).toMillis());
+					final String cached = this.cache.get(key);
+					if (cached != null && cached.startsWith(stamp + ":")) {
+						return cached.endsWith(":true");
+					}
+					final boolean isTestSuite = isTestSuite(file);
+					this.cache.put(key, stamp + ":" + isTestSuite);
+					this.cacheChanged = true;
+					return isTestSuite;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).map(file -> className(root.relativize(file))).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private List<String> scanJar(Path jar) throws IOException {
+		//a jar is scanned as a whole, and cached as a whole
+		final String key = jar.toString();
+		final String stamp = Long.toString(Files.getLastModifiedTime(jar).toMillis());
+		final String cached = this.cache.get(key);
+		if (cached != null && cached.startsWith(stamp + ":")) {
+			final String classNames = cached.substring(stamp.length() + 1);
+			final List<String> retVal = new ArrayList<>();
+			for (String className : classNames.split(",")) {
+				if (!className.isEmpty()) {
+					retVal.add(className);
+				}
+			}
+			return retVal;
+		}
+		final List<String> retVal;
+		try (final FileSystem jarFileSystem = FileSystems.newFileSystem(jar, (ClassLoader) null);
+		     final Stream<Path> files = Files.walk(jarFileSystem.getPath("/"))) {
+			retVal = files.parallel().filter(TestSuiteScanner::isTopLevelClassFile).filter(file -> {
+				try {
+					return isTestSuite(file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).map(file -> className(file.getRoot().relativize(file))).sorted().collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		this.cache.put(key, stamp + ":" + String.join(",", retVal));
+		this.cacheChanged = true;
+		return retVal;
+	}
+
+	private static boolean isTopLevelClassFile(Path file) {
+		final String fileName = file.getFileName() == null ? "" : file.getFileName().toString();
+		return fileName.endsWith(".class") && fileName.indexOf('$') < 0 && !fileName.equals("module-info.class") && 
+				!isVersioned(file) && !Files.isDirectory(file);
+	}
+
+	/* Whether a file is in the META-INF/versions folder of a multi-release jar */
+	private static boolean isVersioned(Path file) {
+		String previous = null;
+		for (Path name : file) {
+			if ("META-INF".equals(previous) && "versions".equals(name.toString())) {
+				return true;
+			}
+			previous = name.toString();
+		}
+		return false;
+	}
+
+	private static String className(Path relativeClassFile) {
+		final String name = relativeClassFile.toString().replace(relativeClassFile.getFileSystem().getSeparator(), ".");
+		return name.substring(0, name.length() - ".class".length());
+	}
+
+	private static boolean inPackage(String className, String packageName, boolean subpackages) {
+		final int lastDot = className.lastIndexOf('.');
+		final String classPackage = (lastDot < 0 ? "" : className.substring(0, lastDot));
+		return classPackage.equals(packageName) || (subpackages && classPackage.startsWith(packageName + "."));
+	}
+
+	/* Whether a class is concrete and declares a test method; a class 
+	 * file that cannot be parsed, e.g., of a too recent version, is not */
+	private static boolean isTestSuite(Path classFile) throws IOException {
+		final byte[] classBytes = Files.readAllBytes(classFile);
+		try {
+			return isTestSuite(classBytes);
+		} catch (RuntimeException e) {
+			logger.debug("Cannot parse the class file " + classFile + ", it is not considered a test suite: " + e);
+			return false;
+		}
+	}
+
+	private static boolean isTestSuite(byte[] classBytes) {
+		final ClassReader reader = new ClassReader(classBytes);
+		if ((reader.getAccess() & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) != 0) {
+			return false;
+		}
+		final boolean[] found = { false };
+		reader.accept(new ClassVisitor(Opcodes.ASM5) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+				if (found[0]) {
+					return null;
+				}
+				return new MethodVisitor(Opcodes.ASM5) {
+					@Override
+					public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+						if (visible && TestMethods.isTestAnnotation(annotationDesc)) {
+							found[0] = true;
+						}
+						return null;
+					}
+				};
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return found[0];
+	}
+
+	private void loadCache() {
+		if (this.cacheFile == null) {
+			return;
+		}
+		final Properties properties = new Properties();
+		try (final InputStream is = Files.newInputStream(this.cacheFile)) {
+			properties.load(is);
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (IOException | IllegalArgumentException e) {
+			logger.warn("Cannot read the cache of the test suites " + this.cacheFile + ": " + e);
+			return;
+		}
+		try {
+			Files.setLastModifiedTime(this.cacheFile, FileTime.fromMillis(System.currentTimeMillis())); //keeps it from pruning
+		} catch (IOException e) {
+			//not an issue, at worst the classpath will be scanned again
+		}
+		for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+			final String key = (String) entry.getKey();
+			if (Files.exists(Paths.get(key))) {
+				this.cache.put(key, (String) entry.getValue());
+			} else {
+				this.cacheChanged = true; //drops the entry
+			}
+		}
+	}
+
+	private void saveCache() {
+		if (this.cacheFile == null || !this.cacheChanged) {
+			return;
+		}
+		//writes a temporary file and moves it, so no reader sees a partial file
+		final Properties properties = new Properties();
+		properties.putAll(this.cache);
+		try {
+			final Path folder = this.cacheFile.toAbsolutePath().getParent();
+			CacheFolders.createPrivateDirectories(folder);
+			CacheFolders.prune(folder, "*.properties");
+			final Path tmp = Files.createTempFile(folder, "tmp", ".tmp");
+			try {
+				try (final OutputStream os = Files.newOutputStream(tmp)) {
+					properties.store(os, "Test suites, by modification time of the class files and jars");
+				}
+				try {
+					Files.move(tmp, this.cacheFile, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, this.cacheFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			this.cacheChanged = false;
+		} catch (IOException e) {
+			logger.warn("Cannot write the cache of the test suites " + this.cacheFile + ": " + e);
+		}
+	}
+}
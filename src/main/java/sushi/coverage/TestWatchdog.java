@@ -0,0 +1,129 @@
+package sushi.coverage;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs tasks, one at a time, on a dedicated daemon thread, and stops
+ * the ones that exceed their timeout. The stop escalates: first the
+ * thread is interrupted, then, if the task does not finish within the
+ * grace time, the thread is stopped; a task that survives also this
+ * is abandoned. Only the thread that runs the task is stopped, and a
+ * task that times out before it starts is not run at all. After a 
+ * timeout the state reachable by the task may be
+ * inconsistent, thus the {@link TestWatchdog} should be disposed
+ * together with it.
+ */
+final class TestWatchdog {
+	/** How a task ended. */
+	enum Outcome {
+		/** The task completed, normally or not, within the timeout. */
+		COMPLETED,
+		/** The task timed out before it started, and will never run. */
+		NOT_STARTED,
+		/** The task timed out, and finished when interrupted. */
+		INTERRUPTED,
+		/** The task timed out, and finished when its thread was stopped. */
+		STOPPED,
+		/** The task timed out, and did not finish; its thread is left running. */
+		ABANDONED;
+
+		boolean timedOut() {
+			return this != COMPLETED;
+		}
+	}
+
+	private final long stopGraceMillis;
+	private final ExecutorService executor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stopGraceMillis the grace time in milliseconds.
+	 */
+	TestWatchdog(long stopGraceMillis) {
+		this.stopGraceMillis = stopGraceMillis;
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			final Thread t = new Thread(r, "sushi-test-runner");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Runs a task.
+	 *
+	 * @param task the {@link Callable} to run.
+	 * @param timeoutMillis the timeout in milliseconds, or a nonpositive
+	 *        {@code long} for no timeout.
+	 * @return the {@link Outcome} of the task.
+	 * @throws ExecutionException if the task completed by throwing an
+	 *         exception.
+	 * @throws InterruptedException if the current thread is interrupted.
+	 */
+	Outcome run(Callable<?> task, long timeoutMillis) throws ExecutionException, InterruptedException {
+		final CountDownLatch finished = new CountDownLatch(1);
+		final AtomicBoolean started = new AtomicBoolean(false);
+		final AtomicReference<Thread> runner = new AtomicReference<>(null);
+		final Future<?> f = this.executor.submit(() -> {
+			if (!started.compareAndSet(false, true)) {
+				return null; //timed out before starting
+			}
+			runner.set(Thread.currentThread());
+			try {
+				return task.call();
+			} finally {
+				runner.set(null);
+				finished.countDown();
+			}
+		});
+		try {
+			if (timeoutMillis > 0) {
+				f.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			else {
+				f.get();
+			}
+			return Outcome.COMPLETED;
+		} catch (TimeoutException e) {
+			if (started.compareAndSet(false, true)) {
+				//the task will not start, and its latch will not count down
+				f.cancel(false);
+				return Outcome.NOT_STARTED;
+			}
+			f.cancel(true); //interrupts the thread
+			if (finished.await(this.stopGraceMillis, TimeUnit.MILLISECONDS)) {
+				return Outcome.INTERRUPTED;
+			}
+			stop(runner.get());
+			if (finished.await(this.stopGraceMillis, TimeUnit.MILLISECONDS)) {
+				return Outcome.STOPPED;
+			}
+			return Outcome.ABANDONED;
+		}
+	}
+
+	/* Stops the thread that runs the task, if it still runs it */
+	@SuppressWarnings("deprecation")
+	private static void stop(Thread t) {
+		if (t != null) {
+			t.stop();
+		}
+	}
+
+	/**
+	 * Disposes this {@link TestWatchdog}; its thread is interrupted
+	 * if still running a task.
+	 */
+	void dispose() {
+		this.executor.shutdownNow();
+	}
+}
@@ -149,12 +149,10 @@ public final class StateFormatterSushiPartialHeap implements FormatterSushi {
     "\n" +
     "import " + sushi.compile.reflection.Allocator.class.getName() + ";\n" +
     "import " + sushi.compile.reflection.AccessibleObject.class.getName() + ";\n" +
-    "import " + sushi.compile.reflection.ObjectField.class.getName() + ";\n" +
+    "import " + sushi.compile.reflection.InitializedFields.class.getName() + ";\n" +
     "import " + sushi.logging.Level.class.getName() + ";\n" +
     "import " + sushi.logging.Logger.class.getName() + ";\n" +
     "\n" +
-    "import java.util.HashSet;\n" +
-    "\n" +
     "public class EvoSuiteWrapper";
 
     private static class MethodUnderTest {
@@ -229,7 +227,7 @@ public final class StateFormatterSushiPartialHeap implements FormatterSushi {
                 return;
             }
             this.s.append(INDENT_2);
-            this.s.append("final HashSet<ObjectField> initializedObjectFields = new HashSet<>();\n");
+            this.s.append("final InitializedFields initializedObjectFields = new InitializedFields();\n");
             this.s.append(INDENT_2);
             this.s.append("final Allocator alloc = Allocator.I();\n");
             final Collection<Clause> pathCondition = finalState.getPathCondition();
@@ -360,11 +358,11 @@ public final class StateFormatterSushiPartialHeap implements FormatterSushi {
             }
             if (hasMemberAccessor(var)) {
                 final int splitPoint = var.lastIndexOf('.');
-                this.s.append("initializedObjectFields.add(new ObjectField(");
+                this.s.append("initializedObjectFields.add(");
                 this.s.append(getValue(var.substring(0, splitPoint)));
                 this.s.append(", \"");
                 this.s.append(var.substring(splitPoint + 1));
-                this.s.append("\"));");
+                this.s.append("\");");
             }
         }
 
@@ -382,11 +380,11 @@ public final class StateFormatterSushiPartialHeap implements FormatterSushi {
             }
             if (hasMemberAccessor(var)) {
                 final int splitPoint = var.lastIndexOf('.');
-                this.s.append("initializedObjectFields.add(new ObjectField(");
+                this.s.append("initializedObjectFields.add(");
                 this.s.append(getValue(var.substring(0, splitPoint)));
                 this.s.append(", \"");
                 this.s.append(var.substring(splitPoint + 1));
-                this.s.append("\"));");
+                this.s.append("\");");
             }
         }
 
@@ -409,11 +407,11 @@ public final class StateFormatterSushiPartialHeap implements FormatterSushi {
             }
             if (hasMemberAccessor(var)) {
                 final int splitPoint = var.lastIndexOf('.');
-                this.s.append("initializedObjectFields.add(new ObjectField(");
+                this.s.append("initializedObjectFields.add(");
                 this.s.append(getValue(var.substring(0, splitPoint)));
                 this.s.append(", \"");
                 this.s.append(var.substring(splitPoint + 1));
-                this.s.append("\"));");
+                this.s.append("\");");
             }
         }
 
@@ -566,11 +564,11 @@ public final class StateFormatterSushiPartialHeap implements FormatterSushi {
                     final String var = getVariableFor(symbol);
                     if (hasMemberAccessor(var)) {
                         final int splitPoint = var.lastIndexOf('.');
-                        this.s.append("initializedObjectFields.add(new ObjectField(");
+                        this.s.append("initializedObjectFields.add(");
                         this.s.append(getValue(var.substring(0, splitPoint)));
                         this.s.append(", \"");
                         this.s.append(var.substring(splitPoint + 1));
-                        this.s.append("\"));");
+                        this.s.append("\");");
                     }
                     this.primitiveSymbolsDone.add(symbol);
                 }
@@ -521,7 +521,7 @@ public final class StateFormatterSushiPathCondition implements FormatterSushi {
                     this.s.append(INDENT_4);
                     this.s.append("}\n");
                     this.s.append(INDENT_4);
-                    this.s.append("return new String(array_");
+                    this.s.append("return sushi.util.StringContentUtils.wrap(array_");
                     this.s.append(heapPosition);
                     this.s.append(");\n");
                     this.s.append(INDENT_3);
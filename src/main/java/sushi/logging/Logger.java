@@ -17,6 +17,10 @@ public class Logger {
 	public Logger(final Class<?> clazz) {
 	}
 
+	public boolean isDebugEnabled() {
+		return Level.DEBUG.ordinal() >= Logger.level.ordinal();
+	}
+
 	public void debug(final String message) {
 		print(Level.DEBUG, message);
 	}
@@ -45,20 +49,25 @@ public class Logger {
 		print(level, message, null);
 	}
 
-	private synchronized void print(final Level level, final String message, final Throwable t) {
+	private void print(final Level level, final String message, final Throwable t) {
+		//checks the level before locking, so disabled messages do not serialize threads
 		if (level.ordinal() >= Logger.level.ordinal()) {
-			try {
-				final PrintStream stream = new PrintStream(System.out, true, "UTF-8");
-				final Date now = new Date();
-				stream.format("%s %-5s - %s", this.dateFmt.format(now), level.name(), message);
-				stream.println();
-				if (t != null) {
-					t.printStackTrace(stream);
-				}
-				stream.flush();
-			} catch (UnsupportedEncodingException e) {
-				throw new RuntimeException(e);
+			printLocked(level, message, t);
+		}
+	}
+
+	private synchronized void printLocked(final Level level, final String message, final Throwable t) {
+		try {
+			final PrintStream stream = new PrintStream(System.out, true, "UTF-8");
+			final Date now = new Date();
+			stream.format("%s %-5s - %s", this.dateFmt.format(now), level.name(), message);
+			stream.println();
+			if (t != null) {
+				t.printStackTrace(stream);
 			}
+			stream.flush();
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
 		}
 	}
 }
@@ -0,0 +1,111 @@
+package sushi.minimize;
+
+import sushi.coverage.CoverageMatrix;
+
+/**
+ * A family of sets, each a bitset of {@code long} words, as read by
+ * {@link SetCover} and {@link Prioritization}. The sets need not be in
+ * the heap: the ones of a {@link CoverageMatrix} are read on demand
+ * from the mapped file.
+ */
+public interface Bitsets {
+	/**
+	 * @return the number of the sets.
+	 */
+	int size();
+
+	/**
+	 * @return the number of the words of every set.
+	 */
+	int words();
+
+	/**
+	 * @param set the index of a set.
+	 * @param bits a bitset of {@link #words()} words.
+	 * @return the number of the elements of the set that are not in
+	 *         {@code bits}.
+	 */
+	int countNotIn(int set, long[] bits);
+
+	/**
+	 * Adds the elements of a set to a bitset.
+	 *
+	 * @param set the index of a set.
+	 * @param bits a bitset of {@link #words()} words.
+	 */
+	void orInto(int set, long[] bits);
+
+	/**
+	 * @param sets an array of bitsets, all with the same number of words.
+	 *        They are not copied, and must not be modified.
+	 * @return the {@link Bitsets} of {@code sets}.
+	 */
+	static Bitsets of(long[][] sets) {
+		final int words = (sets.length == 0 ? 0 : sets[0].length);
+		for (long[] set : sets) {
+			if (set.length != words) {
+				throw new IllegalArgumentException("The sets must have the same number of words");
+			}
+		}
+		return new Bitsets() {
+			@Override
+			public int size() {
+				return sets.length;
+			}
+
+			@Override
+			public int words() {
+				return words;
+			}
+
+			@Override
+			public int countNotIn(int set, long[] bits) {
+				final long[] setBits = sets[set];
+				int count = 0;
+				for (int w = 0; w < words; ++w) {
+					count += Long.bitCount(setBits[w] & ~bits[w]);
+				}
+				return count;
+			}
+
+			@Override
+			public void orInto(int set, long[] bits) {
+				final long[] setBits = sets[set];
+				for (int w = 0; w < words; ++w) {
+					bits[w] |= setBits[w];
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param matrix a {@link CoverageMatrix.Reader}; it must stay open
+	 *        while the returned {@link Bitsets} is used.
+	 * @param rows the indices of some rows of {@code matrix}.
+	 * @return the {@link Bitsets} whose {@code i}-th set is the row
+	 *         {@code rows[i]} of {@code matrix}, read on demand.
+	 */
+	static Bitsets of(CoverageMatrix.Reader matrix, int[] rows) {
+		return new Bitsets() {
+			@Override
+			public int size() {
+				return rows.length;
+			}
+
+			@Override
+			public int words() {
+				return matrix.words();
+			}
+
+			@Override
+			public int countNotIn(int set, long[] bits) {
+				return matrix.countNotIn(rows[set], bits);
+			}
+
+			@Override
+			public void orInto(int set, long[] bits) {
+				matrix.orRow(rows[set], bits);
+			}
+		};
+	}
+}
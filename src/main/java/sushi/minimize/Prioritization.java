@@ -0,0 +1,240 @@
+package sushi.minimize;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Orders a family of sets, e.g., the probes covered by the test cases
+ * of a test suite, so that their union is covered as early as possible.
+ * As {@link SetCover}, every set is a bitset of {@code long} words, read
+ * through {@link Bitsets}, thus possibly not in the heap. The
+ * strategies are the "additional" greedy ones: the next set is the one
+ * that covers the most elements that are not covered yet, possibly
+ * per unit of cost; when no set covers new elements the covered ones
+ * are forgotten, and the ordering continues with the remaining sets.
+ * The sets that cover no element come last. All the strategies are
+ * deterministic: among the sets with the same score, the one with the
+ * least index is preferred.
+ */
+public final class Prioritization {
+	/** The strategies of {@link Prioritization#order(Strategy)}. */
+	public enum Strategy {
+		/** The score of a set is its gain, i.e., the number of elements it newly covers. */
+		ADDITIONAL_GREEDY,
+
+		/** The score of a set is its gain per unit of cost. */
+		TIME_AWARE
+	}
+
+	private final Bitsets sets;
+	private final double[] costs;
+	private final int words;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sets an array of bitsets, all with the same number of words.
+	 *        They are not copied, and must not be modified.
+	 * @param costs the positive costs of the sets, e.g., the durations of
+	 *        the test cases, one for each set.
+	 */
+	public Prioritization(long[][] sets, double[] costs) {
+		this(Bitsets.of(sets), costs);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sets the {@link Bitsets} of the sets; they must not be
+	 *        modified.
+	 * @param costs the positive costs of the sets, e.g., the durations of
+	 *        the test cases, one for each set.
+	 */
+	public Prioritization(Bitsets sets, double[] costs) {
+		if (costs.length != sets.size()) {
+			throw new IllegalArgumentException("There must be a cost for each set");
+		}
+		this.sets = sets;
+		this.costs = costs;
+		this.words = sets.words();
+		for (int set = 0; set < costs.length; ++set) {
+			if (!(costs[set] > 0)) {
+				throw new IllegalArgumentException("The costs must be positive");
+			}
+		}
+	}
+
+	/**
+	 * Orders the sets.
+	 *
+	 * @param strategy the {@link Strategy} of the ordering.
+	 * @return the indices of all the sets, in order.
+	 */
+	public int[] order(Strategy strategy) {
+		final boolean[] taken = new boolean[this.sets.size()];
+		final List<Integer> order = new ArrayList<>();
+		final long[] noneCovered = new long[this.words];
+		while (true) {
+			final int before = order.size();
+			round(strategy, taken, order);
+			if (order.size() == before) {
+				break; //the remaining sets are empty
+			}
+		}
+		//the empty sets come last, the cheapest first if the costs matter
+		final List<Integer> empty = new ArrayList<>();
+		for (int set = 0; set < this.sets.size(); ++set) {
+			if (!taken[set]) {
+				assert gain(set, noneCovered) == 0;
+				empty.add(set);
+			}
+		}
+		if (strategy == Strategy.TIME_AWARE) {
+			empty.sort(Comparator.comparingDouble((Integer set) -> this.costs[set]).thenComparing(set -> set));
+		}
+		order.addAll(empty);
+		final int[] retVal = new int[order.size()];
+		for (int i = 0; i < retVal.length; ++i) {
+			retVal[i] = order.get(i);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Computes the coverage after each set of an ordering.
+	 *
+	 * @param order an ordering of some sets.
+	 * @return an array whose {@code k}-th element is the number of
+	 *         elements covered by the first {@code k + 1} sets of
+	 *         {@code order}.
+	 */
+	public int[] coverageCurve(int[] order) {
+		final long[] covered = new long[this.words];
+		final int[] retVal = new int[order.length];
+		int coveredCount = 0;
+		for (int k = 0; k < order.length; ++k) {
+			coveredCount += gain(order[k], covered);
+			cover(order[k], covered);
+			retVal[k] = coveredCount;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Computes the average percentage of coverage of an ordering, the
+	 * APFD metric with covered elements in place of detected faults:
+	 * {@code 1 - (TF_1 + ... + TF_m) / (n m) + 1 / (2 n)}, where
+	 * {@code n} is the number of sets, {@code m} the number of elements,
+	 * and {@code TF_i} the position of the first set that covers the
+	 * {@code i}-th element.
+	 *
+	 * @param coverageCurve the coverage after each set of the ordering
+	 *        (see {@link #coverageCurve(int[])}).
+	 * @param total the number of elements.
+	 * @return the metric, between 0 and 1, or {@link Double#NaN} if
+	 *         there are no sets or no elements.
+	 */
+	public static double apfc(int[] coverageCurve, int total) {
+		final int n = coverageCurve.length;
+		if (n == 0 || total == 0) {
+			return Double.NaN;
+		}
+		//the sum of the TF_i is the area above the curve
+		double area = 0;
+		for (int covered : coverageCurve) {
+			area += covered;
+		}
+		return (area - total / 2.0d) / ((double) n * total);
+	}
+
+	/**
+	 * Computes the cost-cognizant average percentage of coverage of an
+	 * ordering, the APFD_c metric with covered elements in place of
+	 * detected faults: the sum over the elements of the cost from the
+	 * first set that covers each of them to the end of the ordering,
+	 * counting half the cost of the first set, divided by the total
+	 * cost and by the number of elements.
+	 *
+	 * @param coverageCurve the coverage after each set of the ordering
+	 *        (see {@link #coverageCurve(int[])}).
+	 * @param costsInOrder the costs of the sets of the ordering, in order.
+	 * @param total the number of elements.
+	 * @return the metric, between 0 and 1, or {@link Double#NaN} if
+	 *         there are no sets or no elements.
+	 */
+	public static double apfcCostCognizant(int[] coverageCurve, double[] costsInOrder, int total) {
+		final int n = coverageCurve.length;
+		if (n == 0 || total == 0) {
+			return Double.NaN;
+		}
+		if (costsInOrder.length != n) {
+			throw new IllegalArgumentException("There must be a cost for each set");
+		}
+		final double[] costFrom = new double[n + 1]; //the cost from each set to the end
+		for (int k = n - 1; k >= 0; --k) {
+			costFrom[k] = costFrom[k + 1] + costsInOrder[k];
+		}
+		double sum = 0;
+		int previous = 0;
+		for (int k = 0; k < n; ++k) {
+			final int newlyCovered = coverageCurve[k] - previous;
+			sum += newlyCovered * (costFrom[k] - costsInOrder[k] / 2.0d);
+			previous = coverageCurve[k];
+		}
+		return sum / (costFrom[0] * total);
+	}
+
+	private double score(Strategy strategy, int set, int gain) {
+		return (strategy == Strategy.TIME_AWARE ? gain / this.costs[set] : gain);
+	}
+
+	/* Orders the sets that are not taken, starting with no element covered,
+	 * until no set covers new elements */
+	private void round(Strategy strategy, boolean[] taken, List<Integer> order) {
+		//the gains only decrease while the covered elements grow, and
+		//so do the scores, since the costs are fixed, thus a stale score
+		//is an upper bound, and the set with the largest bound is the
+		//best if its bound is exact (as in SetCover's lazy greedy)
+		final double[] bound = new double[this.sets.size()];
+		final PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, this.sets.size()),
+				(s1, s2) -> (bound[s1] != bound[s2] ? Double.compare(bound[s2], bound[s1]) : Integer.compare(s1, s2)));
+		final long[] covered = new long[this.words];
+		for (int set = 0; set < this.sets.size(); ++set) {
+			if (taken[set]) {
+				continue;
+			}
+			final int gain = gain(set, covered);
+			if (gain > 0) {
+				bound[set] = score(strategy, set, gain);
+				queue.add(set);
+			}
+		}
+		while (!queue.isEmpty()) {
+			final int set = queue.poll();
+			final int gain = gain(set, covered);
+			if (gain == 0) {
+				continue; //for this round
+			}
+			bound[set] = score(strategy, set, gain);
+			final Integer next = queue.peek();
+			if (next == null || bound[set] > bound[next] || (bound[set] == bound[next] && set < next)) {
+				cover(set, covered);
+				taken[set] = true;
+				order.add(set);
+			}
+			else {
+				queue.add(set);
+			}
+		}
+	}
+
+	private int gain(int set, long[] covered) {
+		return this.sets.countNotIn(set, covered);
+	}
+
+	private void cover(int set, long[] covered) {
+		this.sets.orInto(set, covered);
+	}
+}
@@ -0,0 +1,393 @@
+package sushi.minimize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects a small subset of a family of sets with the same union as
+ * the whole family. Every set, e.g., the probes covered by a test case,
+ * is a bitset of {@code long} words, so the gain of a set w.r.t. the
+ * elements that are not covered yet is a popcount. The sets are read
+ * through {@link Bitsets}, thus they need not be in the heap: only the
+ * covered elements and, for the exact search, the candidate sets are.
+ * All the strategies
+ * are deterministic: among the sets with the same gain, the one with
+ * the least index is preferred.
+ */
+public final class SetCover {
+	/** The strategies of {@link SetCover#solve(Strategy)}. */
+	public enum Strategy {
+		/** Selects the set with the largest gain, rescanning all the sets at every step. */
+		GREEDY,
+
+		/** Selects the same sets as {@link #GREEDY}, but recomputes only the gains that may be the largest. */
+		LAZY_GREEDY,
+
+		/**
+		 * Searches a minimum cover by branch and bound if the sets, after
+		 * discarding the duplicated and the dominated ones, are at most
+		 * {@link SetCover#EXACT_MAX_SETS}; otherwise, or if the search
+		 * exceeds {@link SetCover#EXACT_MAX_NODES}, it keeps the best
+		 * cover found, starting from the one of {@link #LAZY_GREEDY}.
+		 */
+		EXACT
+	}
+
+	/** The maximum number of candidate sets of an exact search. */
+	public static final int EXACT_MAX_SETS = 64;
+
+	/** The maximum number of nodes visited by an exact search. */
+	public static final long EXACT_MAX_NODES = 1_000_000L;
+
+	private final Bitsets sets;
+	private final int words;
+	private final long[] universe;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sets an array of bitsets, all with the same number of words.
+	 *        They are not copied, and must not be modified.
+	 */
+	public SetCover(long[][] sets) {
+		this(Bitsets.of(sets));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sets the {@link Bitsets} of the sets; they must not be
+	 *        modified.
+	 */
+	public SetCover(Bitsets sets) {
+		this.sets = sets;
+		this.words = sets.words();
+		this.universe = new long[this.words];
+		for (int set = 0; set < sets.size(); ++set) {
+			sets.orInto(set, this.universe);
+		}
+	}
+
+	/**
+	 * Selects a cover.
+	 *
+	 * @param strategy the {@link Strategy} of the selection.
+	 * @return the indices of the selected sets, in ascending order; their
+	 *         union is the union of all the sets, and no selected set is
+	 *         covered by the other selected ones.
+	 */
+	public int[] solve(Strategy strategy) {
+		final int[] selected;
+		switch (strategy) {
+		case GREEDY:
+			selected = removeRedundant(greedy());
+			break;
+		case LAZY_GREEDY:
+			selected = removeRedundant(lazyGreedy());
+			break;
+		case EXACT:
+			selected = removeRedundant(exact(removeRedundant(lazyGreedy())));
+			break;
+		default:
+			throw new AssertionError("Unexpected strategy " + strategy);
+		}
+		Arrays.sort(selected);
+		return selected;
+	}
+
+	/**
+	 * @return the number of the elements of the union of all the sets.
+	 */
+	public int universeSize() {
+		return popcount(this.universe);
+	}
+
+	private int gain(int set, long[] covered) {
+		return this.sets.countNotIn(set, covered);
+	}
+
+	private void cover(int set, long[] covered) {
+		this.sets.orInto(set, covered);
+	}
+
+	/* A copy of a set, for the few sets that are read repeatedly */
+	private long[] bits(int set) {
+		final long[] bits = new long[this.words];
+		this.sets.orInto(set, bits);
+		return bits;
+	}
+
+	/* Returns the selected sets in order of selection */
+	private int[] greedy() {
+		final long[] covered = new long[this.words];
+		final boolean[] taken = new boolean[this.sets.size()];
+		final List<Integer> selected = new ArrayList<>();
+		while (true) {
+			int best = -1;
+			int bestGain = 0;
+			for (int set = 0; set < this.sets.size(); ++set) {
+				if (taken[set]) {
+					continue;
+				}
+				final int gain = gain(set, covered);
+				if (gain > bestGain) {
+					best = set;
+					bestGain = gain;
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+			taken[best] = true;
+			cover(best, covered);
+			selected.add(best);
+		}
+		return toArray(selected);
+	}
+
+	/* Returns the selected sets in order of selection */
+	private int[] lazyGreedy() {
+		//the gains only decrease while the cover grows, thus a stale
+		//gain is an upper bound, and the set with the largest bound is
+		//the best if its bound is exact
+		final int[] bound = new int[this.sets.size()];
+		final PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, this.sets.size()),
+				(s1, s2) -> (bound[s1] != bound[s2] ? Integer.compare(bound[s2], bound[s1]) : Integer.compare(s1, s2)));
+		final long[] noneCovered = new long[this.words];
+		for (int set = 0; set < this.sets.size(); ++set) {
+			bound[set] = gain(set, noneCovered);
+			if (bound[set] > 0) {
+				queue.add(set);
+			}
+		}
+		final long[] covered = new long[this.words];
+		final List<Integer> selected = new ArrayList<>();
+		while (!queue.isEmpty()) {
+			final int set = queue.poll();
+			bound[set] = gain(set, covered);
+			if (bound[set] == 0) {
+				continue;
+			}
+			final Integer next = queue.peek();
+			if (next == null || bound[set] > bound[next] || (bound[set] == bound[next] && set < next)) {
+				cover(set, covered);
+				selected.add(set);
+			}
+			else {
+				queue.add(set);
+			}
+		}
+		return toArray(selected);
+	}
+
+	/* Drops the selected sets whose elements are all covered by the other
+	 * selected sets, trying first the ones selected last */
+	private int[] removeRedundant(int[] selected) {
+		final int[] coverCount = new int[this.words << 6];
+		for (int set : selected) {
+			forEachElement(bits(set), e -> ++coverCount[e]);
+		}
+		final boolean[] dropped = new boolean[selected.length];
+		int kept = selected.length;
+		for (int i = selected.length - 1; i >= 0; --i) {
+			final long[] bits = bits(selected[i]);
+			if (allCoveredTwice(bits, coverCount)) {
+				forEachElement(bits, e -> --coverCount[e]);
+				dropped[i] = true;
+				--kept;
+			}
+		}
+		final int[] retval = new int[kept];
+		for (int i = 0, k = 0; i < selected.length; ++i) {
+			if (!dropped[i]) {
+				retval[k++] = selected[i];
+			}
+		}
+		return retval;
+	}
+
+	private boolean allCoveredTwice(long[] bits, int[] coverCount) {
+		for (int w = 0; w < this.words; ++w) {
+			for (long word = bits[w]; word != 0; word &= word - 1) {
+				if (coverCount[(w << 6) + Long.numberOfTrailingZeros(word)] < 2) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private interface ElementAction {
+		void apply(int element);
+	}
+
+	private void forEachElement(long[] bits, ElementAction action) {
+		for (int w = 0; w < this.words; ++w) {
+			for (long word = bits[w]; word != 0; word &= word - 1) {
+				action.apply((w << 6) + Long.numberOfTrailingZeros(word));
+			}
+		}
+	}
+
+	private int[] exact(int[] upperBound) {
+		final int[] candidates = candidates();
+		if (candidates == null) {
+			return upperBound;
+		}
+		return new BranchAndBound(candidates, upperBound).search();
+	}
+
+	/* The nonempty sets that are neither duplicated nor dominated by another
+	 * set, in ascending order, or null if they are more than EXACT_MAX_SETS */
+	private int[] candidates() {
+		//by decreasing size, a set is dominated iff it is dominated by
+		//a candidate (domination is transitive), and of equal sets the
+		//first is the one with the least index
+		final int[] size = new int[this.sets.size()];
+		final List<Integer> bySize = new ArrayList<>();
+		final long[] noneCovered = new long[this.words];
+		for (int set = 0; set < this.sets.size(); ++set) {
+			size[set] = gain(set, noneCovered);
+			if (size[set] > 0) {
+				bySize.add(set);
+			}
+		}
+		bySize.sort((s1, s2) -> (size[s1] != size[s2] ? Integer.compare(size[s2], size[s1]) : Integer.compare(s1, s2)));
+		final List<Integer> candidates = new ArrayList<>();
+		final List<long[]> candidatesBits = new ArrayList<>();
+		for (int set : bySize) {
+			boolean dominated = false;
+			for (int i = 0; i < candidates.size() && !dominated; ++i) {
+				dominated = (gain(set, candidatesBits.get(i)) == 0);
+			}
+			if (!dominated) {
+				if (candidates.size() == EXACT_MAX_SETS) {
+					return null;
+				}
+				candidates.add(set);
+				candidatesBits.add(bits(set));
+			}
+		}
+		final int[] retval = toArray(candidates);
+		Arrays.sort(retval);
+		return retval;
+	}
+
+	private static int gain(long[] bits, long[] covered) {
+		int gain = 0;
+		for (int w = 0; w < bits.length; ++w) {
+			gain += Long.bitCount(bits[w] & ~covered[w]);
+		}
+		return gain;
+	}
+
+	private static int popcount(long[] bits) {
+		int count = 0;
+		for (long word : bits) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		final int[] retval = new int[list.size()];
+		for (int i = 0; i < retval.length; ++i) {
+			retval[i] = list.get(i);
+		}
+		return retval;
+	}
+
+	/* The search of a minimum cover among at most 64 candidate sets,
+	 * whose subsets are represented as long masks */
+	private final class BranchAndBound {
+		private final int[] candidates;
+		private final long[][] candidatesBits; //in the heap, since the search reads them repeatedly
+		private final long[] coverers; //per element, the mask of the candidates that contain it
+		private final int[] upperBound;
+		private long best = 0L;
+		private int bestSize;
+		private boolean improved = false;
+		private long nodes = 0L;
+
+		BranchAndBound(int[] candidates, int[] upperBound) {
+			this.candidates = candidates;
+			this.candidatesBits = new long[candidates.length][];
+			this.coverers = new long[SetCover.this.words << 6];
+			for (int c = 0; c < candidates.length; ++c) {
+				final long mask = 1L << c;
+				this.candidatesBits[c] = bits(candidates[c]);
+				forEachElement(this.candidatesBits[c], e -> this.coverers[e] |= mask);
+			}
+			this.upperBound = upperBound;
+			this.bestSize = upperBound.length;
+		}
+
+		int[] search() {
+			visit(0L, 0, new long[SetCover.this.words]);
+			if (!this.improved) {
+				return this.upperBound;
+			}
+			final int[] retval = new int[this.bestSize];
+			for (int c = 0, k = 0; c < this.candidates.length; ++c) {
+				if ((this.best & (1L << c)) != 0) {
+					retval[k++] = this.candidates[c];
+				}
+			}
+			return retval;
+		}
+
+		private void visit(long chosen, int size, long[] covered) {
+			if (++this.nodes > EXACT_MAX_NODES) {
+				return;
+			}
+
+			//finds the uncovered element with the fewest coverers,
+			//and the largest gain of a candidate
+			int element = -1;
+			int elementCoverers = Integer.MAX_VALUE;
+			int uncovered = 0;
+			for (int w = 0; w < SetCover.this.words; ++w) {
+				for (long word = SetCover.this.universe[w] & ~covered[w]; word != 0; word &= word - 1) {
+					final int e = (w << 6) + Long.numberOfTrailingZeros(word);
+					final int count = Long.bitCount(this.coverers[e]);
+					if (count < elementCoverers) {
+						element = e;
+						elementCoverers = count;
+					}
+					++uncovered;
+				}
+			}
+			if (element < 0) {
+				if (size < this.bestSize) {
+					this.best = chosen;
+					this.bestSize = size;
+					this.improved = true;
+				}
+				return;
+			}
+			int maxGain = 0;
+			for (int c = 0; c < this.candidates.length; ++c) {
+				if ((chosen & (1L << c)) == 0) {
+					maxGain = Math.max(maxGain, gain(this.candidatesBits[c], covered));
+				}
+			}
+			final int lowerBound = size + (uncovered + maxGain - 1) / maxGain;
+			if (lowerBound >= this.bestSize) {
+				return;
+			}
+
+			//some candidate containing the element must be chosen
+			for (long mask = this.coverers[element]; mask != 0; mask &= mask - 1) {
+				final int c = Long.numberOfTrailingZeros(mask);
+				final long[] coveredNext = covered.clone();
+				final long[] bits = this.candidatesBits[c];
+				for (int w = 0; w < SetCover.this.words; ++w) {
+					coveredNext[w] |= bits[w];
+				}
+				visit(chosen | (1L << c), size + 1, coveredNext);
+			}
+		}
+	}
+}
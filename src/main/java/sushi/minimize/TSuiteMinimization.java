@@ -1,63 +1,110 @@
 package sushi.minimize;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.Set;
 
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IClassCoverage;
 import org.jacoco.core.analysis.ICounter;
-import org.jacoco.core.data.ExecutionData;
-import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
-import org.jacoco.core.data.ExecutionDataWriter;
-import org.jacoco.core.data.SessionInfoStore;
-import org.jacoco.core.instr.Instrumenter;
-import org.jacoco.core.runtime.IRuntime;
-import org.jacoco.core.runtime.LoggerRuntime;
-import org.jacoco.core.runtime.RuntimeData;
 
+import sushi.coverage.ClassFiles;
+import sushi.coverage.CoverageAccumulator;
+import sushi.coverage.CoverageMatrix;
+import sushi.coverage.InstrumentedClassCache;
+import sushi.coverage.ParallelTestExecutor;
+import sushi.coverage.TargetClasses;
+import sushi.coverage.TargetProbes;
+import sushi.coverage.TestBudget;
+import sushi.coverage.TestMethods;
 import sushi.logging.Level;
 import sushi.logging.Logger;
 
 public final class TSuiteMinimization {
 	private static final Logger logger = new Logger(TSuiteMinimization.class);
+	private static final long DEFAULT_TEST_TIMEOUT_MILLIS = 5_000L;
 	
-	private final IRuntime runtime;
-	private final InstrumentingClassLoader instrumentingClassLoader;
+	private InstrumentedClassCache instrumentedClassCache = null;
+	private SetCover.Strategy setCoverStrategy = SetCover.Strategy.EXACT;
+	private Path coverageMatrixFile = null;
+	private TestBudget testBudget = new TestBudget(DEFAULT_TEST_TIMEOUT_MILLIS, 0L);
+	private int workers = 1;
 	
 	public TSuiteMinimization() {	
-		// For instrumentation and runtime we need a IRuntime instance
-		// to collect execution data:
-		runtime = new LoggerRuntime();
-		
-		// We use a special class loader to directly load the
-		// instrumented class definition from a byte[] instances.
-		instrumentingClassLoader = new InstrumentingClassLoader(TSuiteMinimization.class.getClassLoader(), runtime);	
+	}
+	
+	/**
+	 * Sets the cache of the instrumented classes, that reuses them across
+	 * the runs; by default there is no cache.
+	 * 
+	 * @param instrumentedClassCache an {@link InstrumentedClassCache}, or
+	 *        {@code null} for no cache.
+	 */
+	public void setInstrumentedClassCache(InstrumentedClassCache instrumentedClassCache) {
+		this.instrumentedClassCache = instrumentedClassCache;
+	}
+	
+	/**
+	 * Sets the strategy of the minimization, by default {@link SetCover.Strategy#EXACT}.
+	 * 
+	 * @param setCoverStrategy a {@link SetCover.Strategy}.
+	 */
+	public void setSetCoverStrategy(SetCover.Strategy setCoverStrategy) {
+		this.setCoverStrategy = setCoverStrategy;
+	}
+	
+	/**
+	 * Sets the time budget of the execution of the test suite, by default 
+	 * a timeout of 5 seconds for each test method and no global timeout.
+	 * 
+	 * @param testBudget a {@link TestBudget}.
+	 */
+	public void setTestBudget(TestBudget testBudget) {
+		this.testBudget = testBudget;
+	}
+	
+	/**
+	 * Sets the number of the test methods that are executed in parallel,
+	 * each in its own class loader, by default 1. Parallel execution 
+	 * is safe only for the test suites that do not share state outside
+	 * the JVM, e.g., files, ports or databases.
+	 * 
+	 * @param workers a positive {@code int}.
+	 */
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+	
+	/**
+	 * Sets the file where the coverage matrix of the test suite is
+	 * stored (see {@link CoverageMatrix}); by default it is stored
+	 * in a temporary file that is deleted after the minimization.
+	 * 
+	 * @param coverageMatrixFile a {@link Path}, or {@code null} for
+	 *        the default.
+	 */
+	public void setCoverageMatrixFile(Path coverageMatrixFile) {
+		this.coverageMatrixFile = coverageMatrixFile;
 	}
 	
 	/**
 	 * Run the minimization algorithm with reference to branch and instruction coverage.
+	 * The rows of the coverage matrix are read on demand from the mapped 
+	 * file, thus the heap holds only a few of them at a time; the file 
+	 * must be smaller than 2GB (see {@link CoverageMatrix.Reader}).
 	 * 
 	 * @throws Exception
 	 *             in case of errors
@@ -65,90 +112,106 @@ public final class TSuiteMinimization {
 	public List<Method> 
 	minimizeAgainstBranchCoverage(String[] testSuiteClassNames, String[] coverageTargetClassNames, boolean verboseTestExecution) 
 	throws Exception {		
-		final HashMap<Method, ExecutionDataStore> executionDataMap = 
-				executionDataForTheTestMethods(testSuiteClassNames, coverageTargetClassNames, verboseTestExecution);
-		final List<Method> minimizedSuite = 
-				minimizeAgainstBranchAndInstructionCoverage(executionDataMap, coverageTargetClassNames);
-		return minimizedSuite;
+		return withCoverageMatrix(testSuiteClassNames, coverageTargetClassNames, verboseTestExecution, 
+				(testMethods, testDurationsNanos, matrix, covTargetClasses, targetProbes) -> 
+				minimizeAgainstBranchAndInstructionCoverage(testMethods, matrix, covTargetClasses, targetProbes));
 	}
 
-	private HashMap<Method, ExecutionDataStore> 
-	executionDataForTheTestMethods(String testSuiteClassNames[], String[] coverageTargetClassNames, boolean verboseTestExecution) 
-	throws Exception {
-		
-		// Now we're ready to run our instrumented class and need to startup the
-		// runtime first:
-		final RuntimeData data = new RuntimeData();
-		runtime.startup(data);
-		
-		final HashMap<Method, ExecutionDataStore> coverageDataByTestMethod = new HashMap<Method, ExecutionDataStore>();
-		
-		for (String testSuiteClassName : testSuiteClassNames) {
-			// We load and instrument the test suite
-			Class<?> testSuiteClass = Class.forName(testSuiteClassName, true, instrumentingClassLoader);
-			
-			for (Method testMethod: testSuiteClass.getDeclaredMethods()) {
-				logger.debug("Analyzing method " + testMethod.getName());
-				
-				// We consider only methods with a "Test..." annotation
-				Annotation[] annotations = testMethod.getAnnotations();
-				if (annotations.length == 0 || annotations[0].getClass().getName().contains("Test")) {
-					logger.debug("Skipping method " + testMethod.getName());
-					continue;
-				}
-				
-				Object instance = testSuiteClass.newInstance();
-				logger.info("Executing method " + testMethod);
-				final ExecutorService ex = Executors.newCachedThreadPool();
-				final Callable<Object> task = 
-						() -> testMethod.invoke(instance, new Object[testMethod.getParameterTypes().length]);
-				final Future<Object> f = ex.submit(task);
-				try {
-					f.get(5, TimeUnit.SECONDS);
-				} catch (InterruptedException e) {
-					throw e; //this should not happen
-				} catch (TimeoutException e) {
-					//do nothing
-				} catch (ExecutionException e) {
-					Throwable cause = e.getCause();
-					if (cause instanceof IllegalAccessException) {
-						throw (IllegalAccessException) cause;
-					} else if (cause instanceof IllegalArgumentException) { 
-						throw (IllegalArgumentException) cause;
-					} else if (cause instanceof InvocationTargetException) {
-						// We must ignore the exceptions thrown during the execution of testMethod
-					} else {
-						throw e; //this should not happen
-					}
-				}
-
-				// At the end of test execution we collect execution data 
-				// NB: We reset the execution data (for the next test method)
-				ExecutionDataStore executionDataStore = collectExecutionDataAndReset(data);
-				coverageDataByTestMethod.put(testMethod, executionDataStore);
+	/* What is done with the coverage matrix of a test suite */
+	@FunctionalInterface
+	interface CoverageMatrixTask<T> {
+		T run(List<Method> testMethods, Map<Method, Long> testDurationsNanos, CoverageMatrix.Reader matrix, 
+				Map<String, byte[]> covTargetClasses, TargetProbes targetProbes) throws Exception;
+	}
 
-				// We log the execution data (only for debug purpose)
-				if (verboseTestExecution) 
-					logExecutionData(testMethod, executionDataStore, coverageTargetClassNames);
-			}	
+	/**
+	 * Runs a test suite, and hands its coverage matrix, whose rows are 
+	 * in the order of the returned test methods, to a task.
+	 */
+	<T> T withCoverageMatrix(String[] testSuiteClassNames, String[] coverageTargetClassNames, boolean verboseTestExecution, 
+			CoverageMatrixTask<T> task) 
+	throws Exception {		
+		if (coverageTargetClassNames == null) {
+			logger.debug("Not implemeted yet: Working with no specified coverage targets shall consider all traversed classes as targets");
+			throw new RuntimeException("Not implemeted yet: Working with no specified coverage targets shall consider all traversed classes as targets");
+		}
+		// The target classes, and their inner classes, are read from the 
+		// classpath without loading them
+		final Map<String, byte[]> covTargetClasses = TargetClasses.read(coverageTargetClassNames);
+		final TargetProbes targetProbes = new TargetProbes(covTargetClasses.values());
+		final Path matrixFile = (this.coverageMatrixFile == null ? 
+				Files.createTempFile("sushi-coverage-", ".matrix") : this.coverageMatrixFile);
+		try {
+			final Map<Method, Long> testDurationsNanos = new HashMap<Method, Long>();
+			final List<Method> testMethods = 
+					executionDataForTheTestMethods(testSuiteClassNames, coverageTargetClassNames, covTargetClasses.keySet(), targetProbes, 
+							matrixFile, testDurationsNanos, verboseTestExecution);
+			try (final CoverageMatrix.Reader matrix = new CoverageMatrix.Reader(matrixFile)) {
+				return task.run(testMethods, testDurationsNanos, matrix, covTargetClasses, targetProbes);
+			}
+		} finally {
+			if (this.coverageMatrixFile == null) {
+				Files.deleteIfExists(matrixFile);
+			}
 		}
-		runtime.shutdown();
-		return coverageDataByTestMethod;
 	}
 
-	private ExecutionDataStore collectExecutionDataAndReset(RuntimeData data) throws IOException {
-		// We collect execution data in a byte array and reset
-		final ByteArrayOutputStream byteOStream = new ByteArrayOutputStream();
-		data.collect(new ExecutionDataWriter(byteOStream), new SessionInfoStore(), /*reset data:*/true);
-		final byte[] executionDataAsBytes = byteOStream.toByteArray();
-
-		// We store the execution data in our coverage data map
-		ExecutionDataReader executionDataReader = new ExecutionDataReader(new ByteArrayInputStream(executionDataAsBytes));
-		ExecutionDataStore executionDataStore = new ExecutionDataStore();
-		executionDataReader.setExecutionDataVisitor(executionDataStore);
-		executionDataReader.read();
+	/* The rows of the coverage matrix sorted by test method, so that
+	 * the minimization and the prioritization are deterministic */
+	static int[] sortedRows(List<Method> testMethods) {
+		final Integer[] rows = new Integer[testMethods.size()];
+		for (int row = 0; row < rows.length; ++row) {
+			rows[row] = row;
+		}
+		Arrays.sort(rows, Comparator.comparing(row -> testMethods.get(row).toString()));
+		final int[] retVal = new int[rows.length];
+		for (int i = 0; i < rows.length; ++i) {
+			retVal[i] = rows[i];
+		}
+		return retVal;
+	}
 
-		return executionDataStore;
+	private List<Method> 
+	executionDataForTheTestMethods(String testSuiteClassNames[], String[] coverageTargetClassNames, Set<String> covTargetClassNames, 
+			TargetProbes targetProbes, Path matrixFile, Map<Method, Long> testDurationsNanos, boolean verboseTestExecution) 
+	throws Exception {
+		// We run the test methods in parallel, each worker with its own
+		// runtime and instrumenting class loader, and we stream the probes 
+		// covered by each test method to the coverage matrix, in the order 
+		// of the test methods, without retaining their execution data;
+		// only the execution data of the target classes are collected
+		// NB: We consider only methods with a "Test..." annotation (see TestMethods)
+		final ParallelTestExecutor executor = 
+				new ParallelTestExecutor(this.workers, this.testBudget, this.instrumentedClassCache, covTargetClassNames);
+		final List<Method> analyzedMethods = new ArrayList<Method>();
+		final int[] counts = new int[2]; //methods, methods with errors
+		try (final CoverageMatrix.Writer matrix = new CoverageMatrix.Writer(matrixFile, targetProbes.size())) {
+			executor.execute(testSuiteClassNames, TestMethods::isTestMethod, (testMethod, executionDataStore) -> {
+				// We log the execution data (only for debug purpose)
+				if (verboseTestExecution) {
+					logExecutionData(testMethod, executionDataStore, coverageTargetClassNames);
+				}
+				++counts[0];
+				final long[] coveredProbes;
+				try {
+					coveredProbes = targetProbes.coveredBy(executionDataStore);
+				} catch (Exception e) {
+					++counts[1];
+					return;
+				}
+				matrix.add(testMethod.toString(), coveredProbes);
+				analyzedMethods.add(testMethod);
+			});
+		}
+		logger.debug("Analyzed data for " + counts[0] + " methods, with " + counts[1] + " errors");
+		for (Method testMethod : executor.getTimedOutTestMethods()) {
+			logger.warn("Timed out (" + this.testBudget + "): " + testMethod);
+		}
+		for (Method testMethod : executor.getUnexecutedTestMethods()) {
+			logger.warn("Not executed, global timeout expired: " + testMethod);
+		}
+		testDurationsNanos.putAll(executor.getTestDurationsNanos());
+		return analyzedMethods;
 	}
 
 	private void logExecutionData(Method testMethod, ExecutionDataStore executionDataStore, 
@@ -165,7 +228,7 @@ public final class TSuiteMinimization {
 		final CoverageBuilder coverageBuilder = new CoverageBuilder();
 		final Analyzer analyzer = new Analyzer(executionDataStore, coverageBuilder);
 		for (String targetName : coverageTargetClasses) {
-			analyzer.analyzeClass(getTargetClass(targetName), targetName);
+			analyzer.analyzeClass(ClassFiles.read(targetName), targetName);
 		}
 		
 		logger.debug("\n");
@@ -191,95 +254,44 @@ public final class TSuiteMinimization {
 	}
 	
 	private List<Method> 
-	minimizeAgainstBranchAndInstructionCoverage(HashMap<Method, ExecutionDataStore> executionDataMap, String[] coverageTargetClasses) 
-	throws IOException, ClassNotFoundException {
-		if (coverageTargetClasses == null) {
-			logger.debug("Not implemeted yet: Working with no specified coverage targets shall consider all traversed classes as targets");
-			throw new RuntimeException("Not implemeted yet: Working with no specified coverage targets shall consider all traversed classes as targets");
-		}
+	minimizeAgainstBranchAndInstructionCoverage(List<Method> testMethods, CoverageMatrix.Reader matrix, 
+			Map<String, byte[]> covTargetClasses, TargetProbes targetProbes) 
+	throws IOException {
+		final int[] rows = sortedRows(testMethods);
 
-		// Unfold inner classes in coverage targets
-		final Map<String, byte[]> covTargetClasses = new HashMap<String, byte[]>();
-		for (String name : coverageTargetClasses)  {
-			int classDim = getTargetClassSize(name);
-			byte[] classBytes = new byte[classDim];
-			getTargetClass(name).read(classBytes);
-			covTargetClasses.put(name, classBytes); //consider the outer class...
-			Class<?> clazz = Class.forName(name, true, instrumentingClassLoader);
-			//...and the related inner classes
-			for (Class<?> inner : clazz.getDeclaredClasses()) {
-				classDim = getTargetClassSize(name);
-				classBytes = new byte[classDim];
-				getTargetClass(name).read(classBytes);
-				covTargetClasses.put(inner.getName(), classBytes);
-			}
-		}
+		// The minimal test suite covers all the probes covered by the 
+		// test suite, thus it covers the same branches and instructions;
+		// the rows are read on demand from the matrix, not copied in the heap
+		final SetCover setCover = new SetCover(Bitsets.of(matrix, rows));
+		final int[] selected = setCover.solve(this.setCoverStrategy);
+		logger.debug("Selected " + selected.length + " out of " + rows.length + " test methods covering " + 
+				setCover.universeSize() + " (out of " + targetProbes.size() + ") probes with strategy " + this.setCoverStrategy);
 
 		final List<Method> minimizedSuite = new ArrayList<Method>();
-		ExecutionDataStore totalCovDataStore = null;
-		int totalBranchCov = 0;
-		int totalInstrCov = 0;
-		int totalRefBranchCov = 0;
-		int totalRefInstrCov = 0;
-		
-		int methodCount = 0;
-		int methodWithErrorsCount = 0;
-		int classesInStore = 0;
-		for (Method testMethod: executionDataMap.keySet()) {
-			++methodCount;
-			//logger.debug((methodCount) + ": checking cov of " + testMethod + " -- errors: " + methodWithErrorsCount);
-			//Add coverage data of m
-			final ExecutionDataStore testDataStore = executionDataMap.get(testMethod);
-			if (totalCovDataStore == null) {
-				totalCovDataStore = testDataStore;
-			}
-			else {
-				for (ExecutionData testDataOfClass: testDataStore.getContents()) {
-					long classId = testDataOfClass.getId();
-					ExecutionData totalCovDataOfClass = totalCovDataStore.get(classId);
-					if (totalCovDataOfClass == null) {
-						// add as new item to the data of this class
-						totalCovDataStore.visitClassExecution(testDataOfClass);
-					}
-					else {
-						//merge to the data of this class
-						totalCovDataOfClass.merge(testDataOfClass);
-					}
-				}				
-			}
-			
-			int updtClassesInStore = totalCovDataStore.getContents().size();
-			if (updtClassesInStore < classesInStore) {
-				logger.error("The number of executed classes cannot decrease (" + classesInStore + "-->" +
-						classesInStore + ") while cumulating coverage of test cases");
-			}
-			else if (updtClassesInStore > classesInStore) {
-				classesInStore = totalCovDataStore.getContents().size();
-			}
-			
-			// Compute coverage indicators
-			int currBranchCov = 0;
-			int currInstrCov = 0;
-			int currRefBranchCov = 0;
-			int currRefInstrCov = 0;
+		final CoverageAccumulator coverageAccumulator = new CoverageAccumulator(targetProbes);
+		final long[] totalCoveredProbes = new long[targetProbes.words()];
+		for (int i : selected) {
+			final Method testMethod = testMethods.get(rows[i]);
+			coverageAccumulator.add(matrix.row(rows[i]));
+			matrix.orRow(rows[i], totalCoveredProbes);
+			minimizedSuite.add(testMethod);
+			logger.debug("Update minimal test suite with: " + testMethod);
+		}
+
+		logger.info("In total covered " + 
+				coverageAccumulator.getCoveredBranchCount() + " (out of " + coverageAccumulator.getBranchCount() + ") branches and " + 
+				coverageAccumulator.getCoveredInstructionCount() + " (out of " + coverageAccumulator.getInstructionCount() + ") instructions");
+
+		if (logger.isDebugEnabled()) {
+			// The details of the classes need a full analysis
+			final ExecutionDataStore totalCovDataStore = targetProbes.executionDataOf(totalCoveredProbes);
 			final CoverageBuilder coverageBuilder = new CoverageBuilder();
 			final Analyzer analyzer = new Analyzer(totalCovDataStore, coverageBuilder);
-			try {
 			for (String targetClass : covTargetClasses.keySet()) {
 				analyzer.analyzeClass(covTargetClasses.get(targetClass), targetClass);
 			}
-			} catch (Exception e) {
-				methodWithErrorsCount++;
-				continue;
-			}
 			for (final IClassCoverage cc : coverageBuilder.getClasses()) {
-				currBranchCov += cc.getBranchCounter().getCoveredCount();				
-				currInstrCov += cc.getInstructionCounter().getCoveredCount();				
-				currRefBranchCov += cc.getBranchCounter().getTotalCount();				
-				currRefInstrCov += cc.getInstructionCounter().getTotalCount();		
-				
-				/*
-				System.out.printf("Coverage of class %s%n", cc.getName());
+				logger.debug("Coverage of class " + cc.getName());
 				printCounter("instructions", cc.getInstructionCounter());
 				printCounter("branches", cc.getBranchCounter());
 				printCounter("lines", cc.getLineCounter());
@@ -287,73 +299,17 @@ public final class TSuiteMinimization {
 				printCounter("complexity", cc.getComplexityCounter());
 				
 				for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
-					System.out.printf("Line %s: %s%n", Integer.valueOf(i), getColor(cc
+					logger.debug("Line " + Integer.valueOf(i) +": " + getColor(cc
 							.getLine(i).getStatus()));
 					if (cc.getLine(i).getBranchCounter().getTotalCount() > 0)
 						logger.debug("-->Branch :" + cc.getLine(i).getBranchCounter().getTotalCount());
-				}*/
-
-			}
-			
-			// If coverage increases, update the minimal test suite
-			if(currBranchCov > totalBranchCov || currInstrCov > totalInstrCov) {
-				logger.debug("Coverage increases: " + 
-						totalBranchCov + " (out of " + totalRefBranchCov + ") branches and " + 
-						totalInstrCov + " (out of " + totalRefInstrCov + ") instructions" +
-						" --> " + 
-						currBranchCov  + " (out of " + currRefBranchCov + ") branches and " + 
-						currInstrCov + " (out of " + currRefInstrCov + ") instructions" +
-						"\n --> update minimal test suite with: " + testMethod);
-				minimizedSuite.add(testMethod);
-				totalBranchCov = currBranchCov;
-				totalInstrCov = currInstrCov;
-				totalRefBranchCov = currRefBranchCov;
-				totalRefInstrCov = currRefInstrCov;
-				
-				for (final IClassCoverage cc : coverageBuilder.getClasses()) {
-					logger.debug("Coverage of class " + cc.getName());
-					printCounter("instructions", cc.getInstructionCounter());
-					printCounter("branches", cc.getBranchCounter());
-					printCounter("lines", cc.getLineCounter());
-					printCounter("methods", cc.getMethodCounter());
-					printCounter("complexity", cc.getComplexityCounter());
-					
-					for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
-						logger.debug("Line " + Integer.valueOf(i) +": " + getColor(cc
-								.getLine(i).getStatus()));
-						if (cc.getLine(i).getBranchCounter().getTotalCount() > 0)
-							logger.debug("-->Branch :" + cc.getLine(i).getBranchCounter().getTotalCount());
-					}
 				}
-
 			}
 		}
-		logger.debug("Analyzed data for " + methodCount + " methods, with " + methodWithErrorsCount + " errors");
-
-		logger.info("In total covered " + 
-				totalBranchCov + " (out of " + totalRefBranchCov + ") branches and " + 
-				totalInstrCov + " (out of " + totalRefInstrCov + ") instructions");
 
 		return minimizedSuite;
 	}
 	
-	private int getTargetClassSize(final String name) throws IOException {
-		final byte[] store = new byte[1000];
-		final InputStream is = getTargetClass(name);
-		int classDim = 0;
-		int readBytes = 0;
-		while ((readBytes = is.read(store)) != -1) {
-			//TODO check for overflow?
-			classDim += readBytes;
-		}
-		return classDim;
-	}
-
-	private InputStream getTargetClass(final String name) {
-		final String resource = '/' + name.replace('.', '/') + ".class";
-		return getClass().getResourceAsStream(resource);
-	}
-
 	private void printCounter(final String unit, final ICounter counter) {
 		final Integer missed = Integer.valueOf(counter.getMissedCount());
 		final Integer total = Integer.valueOf(counter.getTotalCount());
@@ -371,72 +327,6 @@ public final class TSuiteMinimization {
 		}
 		return "";
 	}
-
-	/**
-	 * A class loader that loads classes from instrumented in-memory data.
-	 */
-	private class InstrumentingClassLoader extends ClassLoader {
-
-		private final Instrumenter instr;
-    	private final Collection<String> doNotInstrument_packageSubstrings;
-		private final Map<String, Class<?>> instrumentedClasses;
-
-		public InstrumentingClassLoader(ClassLoader parent, IRuntime coveDataRuntime) {
-	        super(parent);
-	  
-	        instr = new Instrumenter(runtime);
-	  
-	        doNotInstrument_packageSubstrings = new HashSet<String>();
-	    	doNotInstrument_packageSubstrings.add("java.");
-	    	doNotInstrument_packageSubstrings.add("sun.");
-	    	doNotInstrument_packageSubstrings.add("jacoco.");
-	    	doNotInstrument_packageSubstrings.add("jbse.meta.");
-	    	
-	    	instrumentedClasses = new HashMap<String, Class<?>>();
-	    }
-	    
-	    private boolean jumpInstrument(String className) {
-	    	if (className == null)
-	    		return true;
-	    	if(className.indexOf('.') == -1)
-	    		return false;
-	        for (String packageSubstring : doNotInstrument_packageSubstrings) {
-	        	if (className.contains(packageSubstring)) 
-	        		return true;
-	        }
-	        return false;
-	    }
-	    
-		@Override
-		protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
-			logger.debug("Loading class " + name);
-			try {
-				if (!jumpInstrument(name)) {
-					Class<?> clazz = instrumentedClasses.get(name);
-					
-					// The class is already instrumented, just return it
-					if (clazz != null) {
-						logger.debug(" ***already there");
-						return clazz;
-					}
-					
-					// Do instrumentation and return
-					byte[] instrumented = instr.instrument(getTargetClass(name), name);
-					clazz = defineClass(name, instrumented, 0, instrumented.length);
-					instrumentedClasses.put(name, clazz);
-					logger.debug("Loaded and instrumented " + name);
-					return clazz;
-				}
-			} catch (Throwable e) {
-				logger.error("Error while loading instrumented class " + name, e);
-			}
-			
-			// The class must not or cannot be instrumented, delegate loading to system class loader
-			logger.debug("Delegating (not instrumenting) " + name);
-			return super.loadClass(name, resolve);
-		}
-
-	}
 	
 	/**
 	 * Entry point to run this as a Java application.
@@ -447,15 +337,33 @@ public final class TSuiteMinimization {
 	public static void main(final String[] args) {
 		Logger.setLevel(Level.DEBUG);
 		String outFile = null;
+		String matrixFile = null;
+		String cacheFolder = null;
 		String[] tsuite = null;
 		String[] covTargets = null;
-		if (args.length == 2) {
-			tsuite = args[0].split(":");
-			covTargets = args[1].split(":");
-		} else if (args.length == 4 && args[0].equals("-f")) {
-			outFile = args[1];
-			tsuite = args[2].split(":");
-			covTargets = args[3].split(":");
+		int argIndex = 0;
+		long testTimeoutMillis = DEFAULT_TEST_TIMEOUT_MILLIS;
+		long globalTimeoutMillis = 0L;
+		int workers = 1;
+		while (argIndex + 1 < args.length && args[argIndex].matches("-[fmctgw]")) {
+			if (args[argIndex].equals("-f")) {
+				outFile = args[argIndex + 1];
+			} else if (args[argIndex].equals("-m")) {
+				matrixFile = args[argIndex + 1];
+			} else if (args[argIndex].equals("-c")) {
+				cacheFolder = args[argIndex + 1];
+			} else if (args[argIndex].equals("-t")) {
+				testTimeoutMillis = Long.parseLong(args[argIndex + 1]);
+			} else if (args[argIndex].equals("-w")) {
+				workers = Integer.parseInt(args[argIndex + 1]);
+			} else {
+				globalTimeoutMillis = Long.parseLong(args[argIndex + 1]);
+			}
+			argIndex += 2;
+		}
+		if (args.length - argIndex == 2) {
+			tsuite = args[argIndex].split(":");
+			covTargets = args[argIndex + 1].split(":");
 		} else {
 			tsuite = 
 					//new String[] {"dll_hard.Main_ESTest"};
@@ -517,7 +425,7 @@ public final class TSuiteMinimization {
 					/*closure11*///"com.google.javascript.jscomp.TypeCheck"
 			};
 			
-			logger.info("Usage: java " + TSuiteMinimization.class.getCanonicalName() + " [-f fileName] test_suite covTarget[:covTarget[...]]");
+			logger.info("Usage: java " + TSuiteMinimization.class.getCanonicalName() + " [-f fileName] [-m matrixFileName] [-c cacheFolder | -c default] [-t testTimeoutMillis] [-g globalTimeoutMillis] [-w workers] test_suite covTarget[:covTarget[...]]");
 			//System.exit(1);
 		}
 		
@@ -525,8 +433,18 @@ public final class TSuiteMinimization {
 
 		List<Method> minimizedSuite = null;
 		try {
-			minimizedSuite = 
-				new TSuiteMinimization().minimizeAgainstBranchCoverage(tsuite, covTargets, false);
+			final TSuiteMinimization minimization = new TSuiteMinimization();
+			minimization.setTestBudget(new TestBudget(testTimeoutMillis, globalTimeoutMillis));
+			minimization.setWorkers(workers);
+			if (matrixFile != null) {
+				minimization.setCoverageMatrixFile(Paths.get(matrixFile));
+			}
+			if (cacheFolder != null) {
+				minimization.setInstrumentedClassCache(cacheFolder.equals("default") ? 
+						InstrumentedClassCache.inDefaultFolder() : 
+						new InstrumentedClassCache(Paths.get(cacheFolder).toAbsolutePath()));
+			}
+			minimizedSuite = minimization.minimizeAgainstBranchCoverage(tsuite, covTargets, false);
 		} catch (Exception e) {
 			logger.error("Error while minimizing", e);
 			System.exit(1);
@@ -0,0 +1,213 @@
+package sushi.minimize;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import sushi.coverage.CoverageAccumulator;
+import sushi.coverage.CoverageMatrix;
+import sushi.coverage.TargetProbes;
+import sushi.coverage.TestBudget;
+import sushi.logging.Level;
+import sushi.logging.Logger;
+
+/**
+ * Orders a test suite so that it reaches its branch coverage as early
+ * as possible (see {@link Prioritization}). The test suite is executed
+ * as by {@link TSuiteMinimization}, and its coverage matrix and the
+ * durations of its test methods drive the ordering. As for the 
+ * minimization, the rows of the matrix are read on demand from the 
+ * mapped file, that must be smaller than 2GB.
+ */
+public final class TSuitePrioritization {
+	private static final Logger logger = new Logger(TSuitePrioritization.class);
+	private static final double MIN_COST_MILLIS = 0.001d; //a test method takes some time
+
+	private final TSuiteMinimization execution = new TSuiteMinimization();
+	private Prioritization.Strategy strategy = Prioritization.Strategy.TIME_AWARE;
+
+	/**
+	 * Sets the strategy of the prioritization, by default {@link Prioritization.Strategy#TIME_AWARE}.
+	 *
+	 * @param strategy a {@link Prioritization.Strategy}.
+	 */
+	public void setStrategy(Prioritization.Strategy strategy) {
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Sets the time budget of the execution of the test suite (see
+	 * {@link TSuiteMinimization#setTestBudget(TestBudget)}).
+	 *
+	 * @param testBudget a {@link TestBudget}.
+	 */
+	public void setTestBudget(TestBudget testBudget) {
+		this.execution.setTestBudget(testBudget);
+	}
+
+	/**
+	 * Sets the number of the test methods that are executed in parallel
+	 * (see {@link TSuiteMinimization#setWorkers(int)}).
+	 *
+	 * @param workers a positive {@code int}.
+	 */
+	public void setWorkers(int workers) {
+		this.execution.setWorkers(workers);
+	}
+
+	/**
+	 * Run the prioritization algorithm with reference to branch coverage.
+	 *
+	 * @return all the test methods whose execution data could be
+	 *         analyzed, in order of priority.
+	 * @throws Exception
+	 *             in case of errors
+	 */
+	public List<Method>
+	prioritizeAgainstBranchCoverage(String[] testSuiteClassNames, String[] coverageTargetClassNames, boolean verboseTestExecution)
+	throws Exception {
+		return this.execution.withCoverageMatrix(testSuiteClassNames, coverageTargetClassNames, verboseTestExecution,
+				(testMethods, testDurationsNanos, matrix, covTargetClasses, targetProbes) ->
+				prioritize(testMethods, testDurationsNanos, matrix, targetProbes));
+	}
+
+	private List<Method>
+	prioritize(List<Method> testMethods, Map<Method, Long> testDurationsNanos, CoverageMatrix.Reader matrix, TargetProbes targetProbes) {
+		final int[] rows = TSuiteMinimization.sortedRows(testMethods);
+		final Bitsets coveredProbes = Bitsets.of(matrix, rows); //read on demand, not copied in the heap
+		final double[] costs = new double[rows.length];
+		for (int i = 0; i < rows.length; ++i) {
+			final Long durationNanos = testDurationsNanos.get(testMethods.get(rows[i]));
+			costs[i] = Math.max(MIN_COST_MILLIS, (durationNanos == null ? 0L : durationNanos) / 1_000_000.0d);
+		}
+
+		// Covering the probes as early as possible covers the branches
+		// as early as possible
+		final Prioritization prioritization = new Prioritization(coveredProbes, costs);
+		final int[] order = prioritization.order(this.strategy);
+		logger.debug("Prioritized " + order.length + " test methods with strategy " + this.strategy);
+
+		final List<Method> prioritizedSuite = new ArrayList<Method>();
+		for (int i : order) {
+			prioritizedSuite.add(testMethods.get(rows[i]));
+		}
+
+		// We compare the metrics of the prioritized order with the ones
+		// of the order of execution
+		final int[] executionOrder = new int[rows.length];
+		for (int i = 0; i < rows.length; ++i) {
+			executionOrder[rows[i]] = i;
+		}
+		logMetrics("Prioritized order", order, coveredProbes, costs, targetProbes);
+		logMetrics("Execution order", executionOrder, coveredProbes, costs, targetProbes);
+
+		return prioritizedSuite;
+	}
+
+	private void logMetrics(String title, int[] order, Bitsets coveredProbes, double[] costs, TargetProbes targetProbes) {
+		// The branch coverage after each test method
+		final CoverageAccumulator coverageAccumulator = new CoverageAccumulator(targetProbes);
+		final int[] branchCurve = new int[order.length];
+		final double[] costsInOrder = new double[order.length];
+		int fullCoverageTests = 0;
+		double fullCoverageMillis = 0.0d;
+		double totalMillis = 0.0d;
+		for (int k = 0; k < order.length; ++k) {
+			final long[] bits = new long[coveredProbes.words()];
+			coveredProbes.orInto(order[k], bits);
+			coverageAccumulator.add(bits);
+			branchCurve[k] = coverageAccumulator.getCoveredBranchCount();
+			costsInOrder[k] = costs[order[k]];
+			totalMillis += costsInOrder[k];
+			if (branchCurve[k] > (k == 0 ? 0 : branchCurve[k - 1])) {
+				fullCoverageTests = k + 1;
+				fullCoverageMillis = totalMillis;
+			}
+		}
+		final int coveredBranches = coverageAccumulator.getCoveredBranchCount();
+		logger.info(title + ": APFC " + String.format("%.4f", Prioritization.apfc(branchCurve, coveredBranches)) +
+				", cost-cognizant APFC " + String.format("%.4f", Prioritization.apfcCostCognizant(branchCurve, costsInOrder, coveredBranches)) +
+				"; covered " + coveredBranches + " (out of " + coverageAccumulator.getBranchCount() + ") branches after " +
+				fullCoverageTests + " (out of " + order.length + ") test methods, in " +
+				String.format("%.1f", fullCoverageMillis) + " (out of " + String.format("%.1f", totalMillis) + ") ms");
+	}
+
+	/**
+	 * Entry point to run this as a Java application.
+	 *
+	 * @param args
+	 *            list of program arguments
+	 */
+	public static void main(final String[] args) {
+		Logger.setLevel(Level.DEBUG);
+		String outFile = null;
+		Prioritization.Strategy strategy = Prioritization.Strategy.TIME_AWARE;
+		long testTimeoutMillis = 5_000L;
+		long globalTimeoutMillis = 0L;
+		int workers = 1;
+		int argIndex = 0;
+		try {
+			while (argIndex + 1 < args.length && args[argIndex].matches("-[fstgw]")) {
+				if (args[argIndex].equals("-f")) {
+					outFile = args[argIndex + 1];
+				} else if (args[argIndex].equals("-s")) {
+					strategy = Prioritization.Strategy.valueOf(args[argIndex + 1]);
+				} else if (args[argIndex].equals("-t")) {
+					testTimeoutMillis = Long.parseLong(args[argIndex + 1]);
+				} else if (args[argIndex].equals("-w")) {
+					workers = Integer.parseInt(args[argIndex + 1]);
+				} else {
+					globalTimeoutMillis = Long.parseLong(args[argIndex + 1]);
+				}
+				argIndex += 2;
+			}
+		} catch (IllegalArgumentException e) {
+			logger.error("Wrong argument " + args[argIndex + 1], e);
+			System.exit(1);
+		}
+		if (args.length - argIndex != 2) {
+			logger.info("Usage: java " + TSuitePrioritization.class.getCanonicalName() + " [-f fileName] [-s " +
+					Arrays.toString(Prioritization.Strategy.values()) + "] [-t testTimeoutMillis] [-g globalTimeoutMillis] [-w workers] " +
+					"test_suite[:test_suite[...]] covTarget[:covTarget[...]]");
+			System.exit(1);
+		}
+		final String[] tsuite = args[argIndex].split(":");
+		final String[] covTargets = args[argIndex + 1].split(":");
+
+		logger.debug("Prioritizing test suite in classes " + Arrays.toString(tsuite) + " with targets in " + Arrays.toString(covTargets));
+
+		List<Method> prioritizedSuite = null;
+		try {
+			final TSuitePrioritization prioritization = new TSuitePrioritization();
+			prioritization.setStrategy(strategy);
+			prioritization.setTestBudget(new TestBudget(testTimeoutMillis, globalTimeoutMillis));
+			prioritization.setWorkers(workers);
+			prioritizedSuite = prioritization.prioritizeAgainstBranchCoverage(tsuite, covTargets, false);
+		} catch (Exception e) {
+			logger.error("Error while prioritizing", e);
+			System.exit(1);
+		}
+		logger.info("Prioritized test suite includes " + prioritizedSuite.size() + " test methods");
+
+		for (Method test: prioritizedSuite) {
+			logger.info(test.toString());
+		}
+
+		if (outFile != null) {
+			try (final PrintWriter writer = new PrintWriter(outFile)) {
+				for (Method test: prioritizedSuite) {
+					writer.println(test.getDeclaringClass().getName() + "#" + test.getName());
+				}
+			} catch (FileNotFoundException e) {
+				logger.error("Error while opening the output file", e);
+				System.exit(1);
+			}
+		}
+
+		System.exit(0);
+	}
+}
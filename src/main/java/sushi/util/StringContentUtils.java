@@ -0,0 +1,96 @@
+package sushi.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Gives access to the content of {@link String}s without copying it,
+ * on the JVMs that store the characters of a string in a {@code char[]}
+ * (up to Java 8). On the other JVMs it falls back to the public API,
+ * that copies.
+ *
+ * The arrays shared with strings must never be modified.
+ */
+public final class StringContentUtils {
+    private static final MethodHandle STRING_VALUE_GETTER; //null if not available
+    private static final MethodHandle STRING_SHARING_FACTORY; //null if not available
+
+    static {
+        MethodHandle getter = null;
+        try {
+            final Field value = String.class.getDeclaredField("value");
+            if (value.getType() == char[].class) {
+                value.setAccessible(true);
+                getter = MethodHandles.lookup().unreflectGetter(value);
+            }
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            //fall back to copy
+        }
+        STRING_VALUE_GETTER = getter;
+
+        MethodHandle factory = null;
+        try {
+            final Class<?> sharedSecrets = Class.forName("sun.misc.SharedSecrets");
+            final Class<?> javaLangAccess = Class.forName("sun.misc.JavaLangAccess");
+            final Object theJavaLangAccess = sharedSecrets.getMethod("getJavaLangAccess").invoke(null);
+            factory = MethodHandles.publicLookup()
+                      .findVirtual(javaLangAccess, "newStringUnsafe", MethodType.methodType(String.class, char[].class))
+                      .bindTo(theJavaLangAccess);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //fall back to copy
+        }
+        STRING_SHARING_FACTORY = factory;
+    }
+
+    private StringContentUtils() { }
+
+    /**
+     * Returns the characters of a string.
+     *
+     * @param s a {@link String}, may be null.
+     * @return a {@code char[]} with the characters of {@code s},
+     *         possibly shared with {@code s} itself and thus not to
+     *         be modified, or {@code null} if {@code s == null}.
+     */
+    public static char[] chars(final String s) {
+        if (s == null) {
+            return null;
+        }
+        if (STRING_VALUE_GETTER != null) {
+            try {
+                final char[] value = (char[]) STRING_VALUE_GETTER.invokeExact(s);
+                if (value.length == s.length()) {
+                    return value;
+                }
+            } catch (Throwable e) {
+                //fall back to copy
+            }
+        }
+        return s.toCharArray();
+    }
+
+    /**
+     * Makes a string with some characters.
+     *
+     * @param chars a {@code char[]}, may be null. It is possibly
+     *        shared with the returned string, thus it must not be
+     *        modified after the invocation of this method.
+     * @return a {@link String} with the characters in {@code chars},
+     *         or {@code null} if {@code chars == null}.
+     */
+    public static String wrap(final char[] chars) {
+        if (chars == null) {
+            return null;
+        }
+        if (STRING_SHARING_FACTORY != null) {
+            try {
+                return (String) STRING_SHARING_FACTORY.invokeExact(chars);
+            } catch (Throwable e) {
+                //fall back to copy
+            }
+        }
+        return new String(chars);
+    }
+}